@@ -0,0 +1,70 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+/**
+ * Adaptive api upload chunk size.
+ * Keeps a smoothed measure of the chunk upload throughput and sizes the next
+ * chunks so each one takes about <code>TARGET_CHUNK_MILLIS</code>, growing or
+ * shrinking at most by a factor of two per measure and always within the given bounds.
+ */
+class AdaptiveChunkSize {
+    static final long TARGET_CHUNK_MILLIS = 1000;
+    private static final double SMOOTHING = 0.3;
+    private final int minSize;
+    private final int maxSize;
+    private int size;
+    private double throughput;
+
+    AdaptiveChunkSize(int initialSize, int minSize, int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.size = clamp(initialSize, minSize, maxSize);
+    }
+
+    /**
+     * @return size for the next chunk
+     */
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Updates the chunk size from a chunk upload measure
+     * @param bytes chunk length
+     * @param millis chunk upload time
+     */
+    synchronized void update(int bytes, long millis) {
+        double sample = bytes / (double) Math.max(1, millis);
+        throughput = throughput == 0 ? sample : throughput * (1 - SMOOTHING) + sample * SMOOTHING;
+        long target = (long) (throughput * TARGET_CHUNK_MILLIS);
+        target = Math.max(size / 2, Math.min(2L * size, target));
+        size = clamp((int) target, minSize, maxSize);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * Api xml response parsed once, answering any number of path queries.
+ * Parsers and compiled path expressions are kept per thread.
+ */
+public class ApiResponse {
+
+    private static Logger log = LoggerFactory.getLogger(ApiResponse.class);
+    private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+    private static final ThreadLocal<XPath> xpath = new ThreadLocal<XPath>() {
+        @Override
+        protected XPath initialValue() {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+    private static final ThreadLocal<Map<String, XPathExpression>> expressions = new ThreadLocal<Map<String, XPathExpression>>() {
+        @Override
+        protected Map<String, XPathExpression> initialValue() {
+            return new HashMap<String, XPathExpression>();
+        }
+    };
+    private final String xml;
+    private final Document document;
+
+    /**
+     * Parses a response
+     * @param xml response, if it is not well formed every query returns <code>null</code>
+     */
+    public ApiResponse(String xml) {
+        this.xml = xml;
+        Document parsed = null;
+        if (xml != null) {
+            try {
+                DocumentBuilder builder = documentBuilder.get();
+                builder.reset();
+                parsed = builder.parse(new InputSource(new StringReader(xml)));
+            } catch (Exception e) {
+                log.debug("Unparseable response: {}", e.getMessage());
+            }
+        }
+        this.document = parsed;
+    }
+
+    /**
+     * @return response text
+     */
+    public String getXml() {
+        return xml;
+    }
+
+    /**
+     * @return parsed document or <code>null</code> if not well formed
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return root element name or <code>null</code> if not well formed
+     */
+    public String getRootName() {
+        if (document == null) {
+            return null;
+        }
+        Element root = document.getDocumentElement();
+        return root == null ? null : root.getNodeName();
+    }
+
+    /**
+     * Evaluates a path as string
+     * @param path XPath expression
+     * @return value, empty if not found, or <code>null</code> if the response or the path is not valid
+     */
+    public String evalXml(String path) {
+        if (document == null) {
+            return null;
+        }
+        try {
+            Map<String, XPathExpression> compiled = expressions.get();
+            XPathExpression expression = compiled.get(path);
+            if (expression == null) {
+                expression = xpath.get().compile(path);
+                compiled.put(path, expression);
+            }
+            return expression.evaluate(document);
+        } catch (XPathExpressionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return error code of an error or exception response
+     */
+    public String getErrorCode() {
+        if ("error".equals(getRootName())) {
+            return evalXml("/error/errorId");
+        }
+        return evalXml("/exception/exceptionId");
+    }
+
+    /**
+     * @return error message of an error or exception response
+     */
+    public String getErrorMessage() {
+        if ("error".equals(getRootName())) {
+            return evalXml("/error/errorMessage");
+        }
+        return evalXml("/exception/exceptionMessage");
+    }
+
+    /**
+     * @param responseType response root element name
+     * @return response state
+     */
+    public String getState(String responseType) {
+        return evalXml(String.format("/%s/state", responseType));
+    }
+}
@@ -0,0 +1,294 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server clock synchronization used to build signed calls ztime.
+ * The offset between server and local clock is refreshed in background every
+ * <code>syncInterval</code> milliseconds, correcting each ztime sample by half the measured
+ * round trip time, so reading the server time does not wait for a ztime call.
+ * Only the first read after start waits, up to <code>firstSyncTimeout</code> milliseconds,
+ * for the first sync to complete, falling back to the local clock if it does not.
+ * Failed syncs are retried with an exponential backoff starting at <code>retryDelay</code>
+ * milliseconds, up to the sync interval.
+ */
+public class ClockSync {
+
+    public static final long DEFAULT_SYNC_INTERVAL = 10 * 60 * 1000;
+    public static final long DEFAULT_FIRST_SYNC_TIMEOUT = 5 * 1000;
+    public static final long DEFAULT_RETRY_DELAY = 1000;
+    private static Logger log = LoggerFactory.getLogger(ClockSync.class);
+    private final SafeCreativeAPI api;
+    private final AtomicBoolean syncPending = new AtomicBoolean();
+    private final AtomicBoolean retryPending = new AtomicBoolean();
+    private final CountDownLatch firstSync = new CountDownLatch(1);
+    private volatile boolean firstSyncAwaited;
+    private volatile long offset;
+    private volatile long roundTripTime = -1;
+    private volatile long lastSync;
+    private long syncInterval = DEFAULT_SYNC_INTERVAL;
+    private long firstSyncTimeout = DEFAULT_FIRST_SYNC_TIMEOUT;
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+    private long nextRetryDelay;
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor
+     * @param api api whose endpoint ztime is read from
+     */
+    public ClockSync(SafeCreativeAPI api) {
+        this.api = api;
+    }
+
+    /**
+     * Starts background synchronization, first sync is done right away
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "safecreative-clock-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                syncQuietly();
+            }
+        }, 0, syncInterval, TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    /**
+     * Stops background synchronization
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if background synchronization is running
+     */
+    public boolean isStarted() {
+        return scheduler != null;
+    }
+
+    /**
+     * Asks for a background sync as soon as possible, i.e. after the server rejected a ztime.
+     * Requests made while a sync is pending are ignored.
+     */
+    public void requestSync() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            start();
+            executor = scheduler;
+        }
+        if (syncPending.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    syncQuietly();
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads server ztime now, updating the clock offset
+     */
+    public void sync() {
+        syncPending.set(false);
+        long start = System.nanoTime();
+        String result = api.call("component=ztime");
+        long end = System.nanoTime();
+        String value = api.evalXml(result, "/ztime");
+        if (value == null || value.length() == 0) {
+            throw new RuntimeException("bad ztime");
+        }
+        long rtt = TimeUnit.NANOSECONDS.toMillis(end - start);
+        long serverTime = Long.parseLong(value) + rtt / 2;
+        offset = serverTime - System.currentTimeMillis();
+        roundTripTime = rtt;
+        lastSync = System.currentTimeMillis();
+        firstSync.countDown();
+        log.debug("ztime={} timeOffset={} rtt={}", new Object[]{value, offset, rtt});
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+            synchronized (this) {
+                nextRetryDelay = 0;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Clock sync failed: {}", e.getMessage());
+            scheduleRetry();
+        }
+    }
+
+    /**
+     * Schedules a sync retry after the current backoff delay, doubling it for the next failure
+     */
+    private void scheduleRetry() {
+        ScheduledExecutorService executor;
+        long delay;
+        synchronized (this) {
+            executor = scheduler;
+            nextRetryDelay = nextRetryDelay == 0 ? retryDelay : Math.min(2 * nextRetryDelay, syncInterval);
+            delay = nextRetryDelay;
+        }
+        if (executor == null || !retryPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                public void run() {
+                    retryPending.set(false);
+                    syncQuietly();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            retryPending.set(false);
+        }
+    }
+
+    /**
+     * Waits for the first sync to complete
+     * @param timeout maximum milliseconds to wait
+     * @return <code>true</code> if synced
+     */
+    public boolean awaitSync(long timeout) {
+        try {
+            return firstSync.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return isSynced();
+        }
+    }
+
+    /**
+     * Current server time. The first call after start waits up to <code>firstSyncTimeout</code>
+     * milliseconds for the first sync, later calls never wait.
+     * @return current server time in milliseconds
+     */
+    public long currentTimeMillis() {
+        if (!firstSyncAwaited && scheduler != null) {
+            if (!awaitSync(firstSyncTimeout)) {
+                log.warn("Clock not synced after {} ms, using local time", firstSyncTimeout);
+            }
+            firstSyncAwaited = true;
+        }
+        return System.currentTimeMillis() + offset;
+    }
+
+    /**
+     * @return <code>true</code> once a sync has completed
+     */
+    public boolean isSynced() {
+        return lastSync > 0;
+    }
+
+    /**
+     * @return server minus local clock milliseconds
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return last sync round trip time in milliseconds, -1 if not synced yet
+     */
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * @return local time of the last completed sync, 0 if not synced yet
+     */
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Sets background sync period, taking effect on next start
+     * @param syncInterval milliseconds between syncs
+     */
+    public void setSyncInterval(long syncInterval) {
+        if (syncInterval <= 0) {
+            throw new IllegalArgumentException("sync interval must be positive");
+        }
+        this.syncInterval = syncInterval;
+    }
+
+    public long getFirstSyncTimeout() {
+        return firstSyncTimeout;
+    }
+
+    /**
+     * Sets how long the first server time read waits for the first sync
+     * @param firstSyncTimeout milliseconds, 0 to never wait
+     */
+    public void setFirstSyncTimeout(long firstSyncTimeout) {
+        if (firstSyncTimeout < 0) {
+            throw new IllegalArgumentException("first sync timeout must not be negative");
+        }
+        this.firstSyncTimeout = firstSyncTimeout;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Sets the delay before retrying a failed sync, doubled on each consecutive failure
+     * @param retryDelay milliseconds before the first retry
+     */
+    public synchronized void setRetryDelay(long retryDelay) {
+        if (retryDelay <= 0) {
+            throw new IllegalArgumentException("retry delay must be positive");
+        }
+        this.retryDelay = retryDelay;
+    }
+}
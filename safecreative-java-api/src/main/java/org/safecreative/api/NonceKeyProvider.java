@@ -0,0 +1,188 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Nonce key cache for noncekey signed calls.
+ * Keeps one prefetched nonce key per authkey, taken by the next signed call instead of
+ * doing an <code>authkey.state</code> round trip before it. Once a call using a nonce key
+ * succeeds the next one is prefetched in background; when it fails the authkey entry is
+ * invalidated so the next call reads a fresh nonce key.<br/>
+ * Every take bumps the authkey generation and a prefetch only stores its nonce key if the
+ * generation did not change since it was requested, so a nonce key read while a later call
+ * was taking (and about to use) the same one is never cached.
+ */
+public class NonceKeyProvider {
+
+    private static Logger log = LoggerFactory.getLogger(NonceKeyProvider.class);
+    private final SafeCreativeAPI api;
+    private final Map<String, String> nonceKeys = new HashMap<String, String>();
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+    private Executor executor;
+    private final boolean ownExecutor;
+
+    /**
+     * Constructor, prefetching on a single daemon thread
+     * @param api api used to read authkey state
+     */
+    public NonceKeyProvider(SafeCreativeAPI api) {
+        this.api = api;
+        this.ownExecutor = true;
+    }
+
+    /**
+     * Constructor
+     * @param api api used to read authkey state
+     * @param executor executor running the prefetches, not shut down by this provider
+     */
+    public NonceKeyProvider(SafeCreativeAPI api, Executor executor) {
+        this.api = api;
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    /**
+     * Takes the nonce key for a call, a cached nonce key is only given once
+     * @param authKey authorization key
+     * @return nonce key
+     */
+    public String take(String authKey) {
+        String nonceKey = takeCached(authKey);
+        if (nonceKey == null) {
+            log.debug("nonce key cache miss for {}", authKey);
+            nonceKey = api.getNonceKey(authKey);
+        }
+        return nonceKey;
+    }
+
+    /**
+     * Takes the cached nonce key for a call, if any
+     * @param authKey authorization key
+     * @return cached nonce key or <code>null</code> if none, then {@link #take(String)} reads it from the server
+     */
+    public synchronized String takeCached(String authKey) {
+        nextGeneration(authKey);
+        return nonceKeys.remove(authKey);
+    }
+
+    private void nextGeneration(String authKey) {
+        Long generation = generations.get(authKey);
+        generations.put(authKey, generation == null ? 1L : generation + 1);
+    }
+
+    /**
+     * Notifies the result of a call signed with a nonce key taken from this provider
+     * @param authKey authorization key
+     * @param accepted <code>true</code> if the server accepted the call
+     */
+    public void release(String authKey, boolean accepted) {
+        if (accepted) {
+            prefetch(authKey);
+        } else {
+            invalidate(authKey);
+        }
+    }
+
+    /**
+     * Reads the next nonce key in background, it is dropped if a take happens meanwhile
+     * @param authKey authorization key
+     */
+    public void prefetch(final String authKey) {
+        final Long generation;
+        synchronized (this) {
+            generation = generations.get(authKey);
+        }
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    String nonceKey = api.getNonceKey(authKey);
+                    if (nonceKey != null && nonceKey.length() > 0) {
+                        store(authKey, nonceKey, generation);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("nonce key prefetch failed: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    private synchronized void store(String authKey, String nonceKey, Long generation) {
+        Long current = generations.get(authKey);
+        if (current == null ? generation == null : current.equals(generation)) {
+            nonceKeys.put(authKey, nonceKey);
+        } else {
+            log.debug("dropping nonce key prefetched before a take for {}", authKey);
+        }
+    }
+
+    /**
+     * Drops the cached nonce key of an authkey and any prefetch in flight
+     * @param authKey authorization key
+     */
+    public synchronized void invalidate(String authKey) {
+        nextGeneration(authKey);
+        nonceKeys.remove(authKey);
+    }
+
+    /**
+     * Drops every cached nonce key
+     */
+    public synchronized void clear() {
+        nonceKeys.clear();
+    }
+
+    /**
+     * Stops background prefetching on the default executor
+     */
+    public synchronized void shutdown() {
+        if (ownExecutor && executor != null) {
+            ((ExecutorService) executor).shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized Executor getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "safecreative-nonce-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
@@ -31,6 +31,13 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.safecreative.api.SafeCreativeAPI.*;
 
@@ -38,14 +45,16 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
-import org.apache.commons.httpclient.methods.multipart.FilePartSource;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.PartSource;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
 import org.apache.commons.lang.StringUtils;
-import org.safecreative.api.util.Base64;
+import org.safecreative.api.util.BufferProcessor;
+import org.safecreative.api.util.Digest;
+import org.safecreative.api.util.Digest.MessageDigestBufferProcessor;
 import org.safecreative.api.util.IOHelper;
+import org.safecreative.api.util.LocalFilePartSource;
 import org.safecreative.api.wrapper.model.Work;
 import org.safecreative.api.wrapper.util.ParamsBuilder;
 import org.slf4j.Logger;
@@ -59,6 +68,19 @@ import org.slf4j.LoggerFactory;
  */
 public class RegisterWork {
 
+    public static final int DEFAULT_CHUNK_SIZE = 50 * 1024;
+    public static final int MIN_CHUNK_SIZE = 16 * 1024;
+    /**
+     * Default upper bound of the api upload chunk size. It is a client side default kept small
+     * enough for the chunk Base64 form body to stay well within usual server request limits,
+     * not a documented server limit, so it can be changed with {@link #setMaxChunkSize(int)}.
+     */
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    /**
+     * Error codes of an unknown or expired upload id, the only api errors discarding an upload checkpoint
+     */
+    public static final String INVALID_UPLOAD_ERROR = "InvalidUploadId";
+    public static final String UPLOAD_EXPIRED_ERROR = "UploadExpired";
     private static Logger log = LoggerFactory.getLogger(RegisterWork.class);
     private SafeCreativeAPI api;
     private String code;
@@ -67,6 +89,11 @@ public class RegisterWork {
     private boolean registryFinal = false;
     private HttpClient client;
     private boolean postUpload = true;
+    private int uploadWindow = 1;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxChunkSize = MAX_CHUNK_SIZE;
+    private boolean adaptiveChunkSize = false;
+    private File checkpointFile;
 
 	/**
 	 * Constructor
@@ -128,6 +155,107 @@ public class RegisterWork {
         return postUpload;
     }
 
+    /**
+     * @return api upload chunk size, initial size when adaptive
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets api upload chunk size, used as initial size when adaptive
+     * @param chunkSize chunk size in bytes between <code>MIN_CHUNK_SIZE</code> and the maximum chunk size
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("chunk size must be between " + MIN_CHUNK_SIZE + " and " + maxChunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return api upload chunk size upper bound
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * Sets api upload chunk size upper bound, <code>MAX_CHUNK_SIZE</code> by default.
+     * Adaptive uploads allocate buffers of this size.
+     * @param maxChunkSize maximum chunk size in bytes, not less than <code>MIN_CHUNK_SIZE</code>
+     */
+    public void setMaxChunkSize(int maxChunkSize) {
+        if (maxChunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("max chunk size must be at least " + MIN_CHUNK_SIZE);
+        }
+        this.maxChunkSize = maxChunkSize;
+        this.chunkSize = Math.min(chunkSize, maxChunkSize);
+    }
+
+    public boolean isAdaptiveChunkSize() {
+        return adaptiveChunkSize;
+    }
+
+    /**
+     * If <code>true</code> api upload chunk size grows or shrinks from the measured
+     * chunk upload time and throughput, between <code>MIN_CHUNK_SIZE</code> and the maximum chunk size
+     * @param adaptiveChunkSize
+     */
+    public void setAdaptiveChunkSize(boolean adaptiveChunkSize) {
+        this.adaptiveChunkSize = adaptiveChunkSize;
+    }
+
+    /**
+     * @return maximum number of api upload chunks in flight
+     */
+    public int getUploadWindow() {
+        return uploadWindow;
+    }
+
+    /**
+     * Sets the maximum number of api upload chunks in flight. Values greater than 1
+     * send chunks concurrently while the next ones are read, 1 sends them one after another.
+     * @param uploadWindow maximum number of chunks in flight
+     */
+    public void setUploadWindow(int uploadWindow) {
+        if (uploadWindow < 1) {
+            throw new IllegalArgumentException("upload window must be at least 1");
+        }
+        this.uploadWindow = uploadWindow;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the checkpoint file for resumable api uploads. If set, upload id, upload url and
+     * last acknowledged offset are saved there while uploading, and an upload of the same file
+     * started later continues from the last good chunk. The file is removed on commit.
+     * @param checkpointFile checkpoint file or <code>null</code> to disable resumable uploads
+     * @see UploadSession
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Loads the saved upload session of a file from the checkpoint file
+     * @param source uploaded source
+     * @return saved session for the file or <code>null</code> if none or if the file changed
+     * @throws IOException on source read error
+     * @see UploadSession#matches(PartSource)
+     */
+    public UploadSession loadUploadSession(PartSource source) throws IOException {
+        UploadSession session = UploadSession.load(checkpointFile);
+        if (session != null && !session.matches(source)) {
+            log.info("Ignoring upload checkpoint of another file {}", session);
+            return null;
+        }
+        return session;
+    }
+
 	/**	
 	 * @param workFile File to register
 	 * @param customValues Work containing register parameters to override those of defined profile,
@@ -150,7 +278,7 @@ public class RegisterWork {
 	 * @throws Exception  
      */
     public String registerWork(String fileName, File workFile,Work work, String checksum) throws Exception {
-		return registerWork(fileName,new FilePartSource(fileName,workFile),work,checksum);
+		return registerWork(fileName,new LocalFilePartSource(fileName,workFile),work,checksum);
 	}
 	
 	/**
@@ -179,29 +307,43 @@ public class RegisterWork {
 		if (StringUtils.isEmpty(getProfile()) && work == null) { // ERROR
             throw new IllegalArgumentException("No profile or parameters defined");
         }		
-        String baseUrl = api.getBaseUrl();
-        ////////////////////////////////////////////////////////////////////
-        //Look up:
-        log.debug("registerWork Lookup upload server");
-        Map params = api.createParams("component", "work.upload.lookup");
-
-        params.put("authkey", api.getAuthKey());
+        String name = null;
         if(workFile != null) {
-			String name = fileName == null ? workFile.getFileName() : fileName;
-			if(name != null) {
-				params.put("filename", name);
-			}
+			name = fileName == null ? workFile.getFileName() : fileName;
         }
-        if (postUpload) {
-            params.put("bypost", "true");
+        UploadSession session = null;
+        if (workFile != null && !postUpload && checkpointFile != null) {
+            session = loadUploadSession(workFile);
+        }
+        Map params;
+        String uploadURL;
+        String uploadID;
+        if (session != null) {
+            log.info("registerWork resuming upload {}", session);
+            uploadURL = session.getUploadURL();
+            uploadID = session.getUploadID();
+        } else {
+            ////////////////////////////////////////////////////////////////////
+            //Look up:
+            log.debug("registerWork Lookup upload server");
+            params = api.createParams("component", "work.upload.lookup");
+
+            params.put("authkey", api.getAuthKey());
+            if(name != null) {
+                params.put("filename", name);
+            }
+            if (postUpload) {
+                params.put("bypost", "true");
+            }
+            String response = api.callSigned(params, api.getPrivateAuthKey(), true, false);
+            checkError(params, response);
+            ApiResponse lookup = api.parseResponse(response);
+            uploadURL = lookup.evalXml("/workuploadlookup/uploadurl");
+            URL url = new URL(uploadURL);
+            log.debug("Upload URL: {}", url);
+            uploadID = lookup.evalXml("/workuploadlookup/uploadid");
+            log.debug("Upload id: {}", uploadID);
         }
-        String response = api.callSigned(params, api.getPrivateAuthKey(), true, false);
-        checkError(params, response);
-        String uploadURL = api.evalXml(response, "/workuploadlookup/uploadurl");
-        URL url = new URL(uploadURL);
-        log.debug("Upload URL: {}", url);
-        String uploadID = api.evalXml(response, "/workuploadlookup/uploadid");
-        log.debug("Upload id: {}", uploadID);
         String uploadTicket = null;
         if(workFile != null) {            			
             if (postUpload) {
@@ -214,14 +356,13 @@ public class RegisterWork {
             } else {
                 ////////////////////////////////////////////////////////////////////
                 //Begin:
-                uploadTicket = uploadFile(uploadURL, uploadID, workFile, checksum);
+                uploadTicket = uploadFile(uploadURL, uploadID, workFile, checksum, session);
             }
             log.debug("uploadTicket {}", uploadTicket);
         }
         ////////////////////////////////////////////////////////////////////
         //Work registration:
         log.info("REGISTRATION");
-        api.setBaseUrl(baseUrl);
         params = api.createParams("component", "work.register");
         params.put("authkey", api.getAuthKey());
         if(uploadTicket != null) {
@@ -310,79 +451,89 @@ public class RegisterWork {
 	 * @throws Exception
 	 */
 	public String uploadFile(String uploadURL, String uploadID, final File file, String checksum) throws Exception {
-		return uploadFile(uploadURL, uploadID, new FilePartSource(file), checksum);
+		return uploadFile(uploadURL, uploadID, new LocalFilePartSource(file), checksum);
 	}	
 	
 	/**
-	 * Uploads a file
+	 * Uploads a file.
+	 * If a checkpoint file is set and it holds a session for the same upload id, the upload
+	 * continues from its last acknowledged offset, otherwise it begins a new session.
 	 * @param uploadURL
 	 * @param uploadID
 	 * @param file <code>PartSource</code> to upload
-	 * @param checksum
+	 * @param checksum SHA-1 checksum, if blank it is computed while the chunks are read
 	 * @return uploadticket
 	 * @throws Exception
 	 */
 	public String uploadFile(String uploadURL, String uploadID, final PartSource file, String checksum) throws Exception {
+        return uploadFile(uploadURL, uploadID, file, checksum, checkpointFile == null ? null : loadUploadSession(file));
+    }
+
+	/**
+	 * Uploads a file, resuming a session already loaded with {@link #loadUploadSession(PartSource)}
+	 * @param uploadURL
+	 * @param uploadID
+	 * @param file <code>PartSource</code> to upload
+	 * @param checksum SHA-1 checksum, if blank it is computed while the chunks are read
+	 * @param session saved session of the file, ignored if it is not for this upload id,
+	 * or <code>null</code> to begin a new session
+	 * @return uploadticket
+	 * @throws Exception
+	 */
+	public String uploadFile(String uploadURL, String uploadID, final PartSource file, String checksum,
+            UploadSession session) throws Exception {
         String response;
         Map<String, String> params;
-		api.setBaseUrl(uploadURL);
-        params = api.createParams("component", "work.upload.begin");
-        params.put("authkey", api.getAuthKey());
-        params.put("uploadid", uploadID);
-        response = api.callSigned(params, api.getPrivateAuthKey(), true, false);
-        checkError(params, response);
-        log.debug("response {}", response);
-        String state = api.getResponseState(response);
-        if (!"ready".equalsIgnoreCase(state)) {
-            throw new RuntimeException("Unexpected work.upload.begin state " + state);
+        long uploadSize = file.getLength();
+        if (session != null && !(uploadID.equals(session.getUploadID()) && uploadURL.equals(session.getUploadURL()))) {
+            session = null;
+        }
+        if (session == null) {
+            params = api.createParams("component", "work.upload.begin");
+            params.put("authkey", api.getAuthKey());
+            params.put("uploadid", uploadID);
+            response = api.callSigned(uploadURL, params, api.getPrivateAuthKey(), true, false, false);
+            checkError(params, response);
+            log.debug("response {}", response);
+            String state = api.getResponseState(response);
+            if (!"ready".equalsIgnoreCase(state)) {
+                throw new RuntimeException("Unexpected work.upload.begin state " + state);
+            }
+            if (checkpointFile != null) {
+                session = UploadSession.create(checkpointFile, uploadURL, uploadID, file);
+                session.save();
+            }
+        } else {
+            log.info("Resuming upload {}", session);
         }
 
         ////////////////////////////////////////////////////////////////////
         //Chunk:
-        int chunkSize = 50 * 1024;
-        long offset = 0;
-        int readed = 0;
-        int percent = 0;
-        byte[] chunkBuffer = new byte[chunkSize];
-        byte[] data;
-        long uploadSize = file.getLength();
-        InputStream is = null;
-        if (uploadProgressListener != null) {
-            uploadProgressListener.uploadProgress(percent, offset, uploadSize);
+        long offset = session == null ? 0 : session.getOffset();
+        notifyProgress(offset, uploadSize);
+        MessageDigestBufferProcessor digestProcessor = null;
+        if (StringUtils.isBlank(checksum)) {
+            digestProcessor = new MessageDigestBufferProcessor(Digest.SHA1);
         }
+        InputStream is = null;
         try {
             is = file.createInputStream();
-            while (offset < uploadSize) {
-                readed = is.read(chunkBuffer);
-                if (readed <= 0) {
-                    break;
-                }
-
-                data = new byte[readed];
-                System.arraycopy(chunkBuffer, 0, data, 0, readed);
-                params = api.createParams("component", "work.upload.chunk");
-                params.put("authkey", api.getAuthKey());
-
-                params.put("uploadid", uploadID);
-                params.put("offset", String.valueOf(offset));
-                String encoded = Base64.encodeBytes(data);
-                params.put("data", encoded);
-                response = api.callSigned(params, api.getPrivateAuthKey(), true, false);
-                checkError(params, response);
-                state = api.getResponseState("workuploadchunk", response);
-                if (!"continue".equalsIgnoreCase(state)) {
-                    throw new RuntimeException("Unexpected work.upload.chunk state " + state);
-                }
-                offset += readed;
-                percent = (int) ((100f * (float) offset) / (float) uploadSize);
-                log.debug("CHUNK UPLOADED {}%", percent);
-                if (uploadProgressListener != null) {
-                    uploadProgressListener.uploadProgress(percent, offset, uploadSize);
-                }
+            skipFully(is, offset, digestProcessor);
+            if (uploadWindow > 1) {
+                uploadChunksPipelined(uploadURL, uploadID, is, offset, uploadSize, session, digestProcessor);
+            } else {
+                uploadChunks(uploadURL, uploadID, is, offset, uploadSize, session, digestProcessor);
             }
+        } catch (ApiException ex) {
+            discardSession(session, ex);
+            throw ex;
         } finally {
             IOHelper.closeQuietly(is);
         }
+        if (digestProcessor != null) {
+            checksum = Digest.toHex(digestProcessor.getDigest());
+            log.debug("Upload SHA-1 checksum {}", checksum);
+        }
         log.info("Work uploaded successfully!");
         if (uploadProgressListener != null) {
             uploadProgressListener.uploadProgress(100, uploadSize, uploadSize);
@@ -398,16 +549,217 @@ public class RegisterWork {
         params.put("length", String.valueOf(uploadSize));
         params.put("checksum", checksum);
 
-        response = api.callSigned(params, api.getPrivateAuthKey(), true, false);
-        checkError(params, response);
+        response = api.callSigned(uploadURL, params, api.getPrivateAuthKey(), true, false, false);
+        try {
+            checkError(params, response);
+        } catch (ApiException ex) {
+            discardSession(session, ex);
+            throw ex;
+        }
+        if (session != null) {
+            session.delete();
+        }
         return api.evalXml(response, "/workuploadcommit/uploadticket");
     }
 
+    /**
+     * Removes the checkpoint of a session whose upload id the server reports unknown or expired,
+     * so a later upload begins a new session instead of resuming again with the same upload id.
+     * Other errors, transient ones like <code>InvalidTime</code> included, keep the checkpoint.
+     */
+    private void discardSession(UploadSession session, ApiException error) {
+        if (session != null && isSessionError(error.getErrorCode())) {
+            log.warn("Discarding upload checkpoint {} rejected with {}", session, error.getErrorCode());
+            session.delete();
+        }
+    }
+
+    /**
+     * @param errorCode api error code
+     * @return <code>true</code> if the error means the upload id can not be resumed
+     */
+    protected boolean isSessionError(String errorCode) {
+        return INVALID_UPLOAD_ERROR.equals(errorCode) || UPLOAD_EXPIRED_ERROR.equals(errorCode);
+    }
+
+    private void uploadChunks(String uploadURL, String uploadID, InputStream is, long offset, long uploadSize,
+            UploadSession session, BufferProcessor processor) throws Exception {
+        AdaptiveChunkSize sizer = createChunkSizer();
+        Chunk chunk = new Chunk(getBufferSize());
+        int readed;
+        while (offset < uploadSize) {
+            readed = readChunk(is, chunk.buffer, sizer == null ? chunkSize : sizer.getSize(), processor);
+            if (readed <= 0) {
+                break;
+            }
+            long start = System.currentTimeMillis();
+            uploadChunk(uploadURL, uploadID, offset, chunk, readed);
+            if (sizer != null) {
+                sizer.update(readed, System.currentTimeMillis() - start);
+            }
+            if (session != null) {
+                session.acknowledge(offset, readed);
+            }
+            offset += readed;
+            notifyProgress(offset, uploadSize);
+        }
+    }
+
+    /**
+     * Uploads chunks keeping up to <code>uploadWindow</code> of them in flight.
+     * The next chunks are read while the previous ones are being sent, each one
+     * using a buffer and parameters taken from a pool of <code>uploadWindow</code> of them so
+     * the reader blocks once the window is full.
+     */
+    private void uploadChunksPipelined(final String uploadURL, final String uploadID, InputStream is,
+            long offset, final long uploadSize, final UploadSession session, BufferProcessor processor) throws Exception {
+        final AdaptiveChunkSize sizer = createChunkSizer();
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(uploadWindow);
+        for (int i = 0; i < uploadWindow; i++) {
+            chunks.add(new Chunk(getBufferSize()));
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong uploaded = new AtomicLong(offset);
+        ExecutorService executor = Executors.newFixedThreadPool(uploadWindow);
+        try {
+            while (offset < uploadSize && failure.get() == null) {
+                final Chunk chunk = chunks.take();
+                final int readed = readChunk(is, chunk.buffer, sizer == null ? chunkSize : sizer.getSize(), processor);
+                if (readed <= 0 || failure.get() != null) {
+                    chunks.add(chunk);
+                    break;
+                }
+                final long chunkOffset = offset;
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (failure.get() == null) {
+                                long start = System.currentTimeMillis();
+                                uploadChunk(uploadURL, uploadID, chunkOffset, chunk, readed);
+                                if (sizer != null) {
+                                    sizer.update(readed, System.currentTimeMillis() - start);
+                                }
+                                if (session != null) {
+                                    session.acknowledge(chunkOffset, readed);
+                                }
+                                notifyProgress(uploaded.addAndGet(readed), uploadSize);
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            chunks.add(chunk);
+                        }
+                    }
+                });
+                offset += readed;
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t != null) {
+            throw new RuntimeException("Chunk upload failed", t);
+        }
+    }
+
+    /**
+     * Chunk buffer and call parameters, reused for every chunk sent with them
+     */
+    private static class Chunk {
+        final byte[] buffer;
+        final RequestParams params = new RequestParams();
+
+        Chunk(int size) {
+            buffer = new byte[size];
+        }
+    }
+
+    private void uploadChunk(String uploadURL, String uploadID, long offset, Chunk chunk, int len) throws Exception {
+        RequestParams params = chunk.params;
+        params.clear();
+        params.add("component", "work.upload.chunk", "authkey", api.getAuthKey(), "uploadid", uploadID, "offset", offset);
+        String response = api.callSignedData(uploadURL, params, "data", chunk.buffer, 0, len,
+                api.getPrivateAuthKey(), true, false, false);
+        checkError(params, response);
+        String state = api.getResponseState("workuploadchunk", response);
+        if (!"continue".equalsIgnoreCase(state)) {
+            throw new RuntimeException("Unexpected work.upload.chunk state " + state);
+        }
+    }
+
+    private AdaptiveChunkSize createChunkSizer() {
+        return adaptiveChunkSize ? new AdaptiveChunkSize(chunkSize, MIN_CHUNK_SIZE, maxChunkSize) : null;
+    }
+
+    private int getBufferSize() {
+        return adaptiveChunkSize ? maxChunkSize : chunkSize;
+    }
+
+    /**
+     * Skips <code>len</code> bytes of the stream, reading them through the processor if not <code>null</code>
+     */
+    private void skipFully(InputStream is, long len, BufferProcessor processor) throws IOException {
+        if (processor != null) {
+            byte[] buffer = new byte[IOHelper.DEFAULT_BUFFER_SIZE];
+            while (len > 0) {
+                int readed = readChunk(is, buffer, (int) Math.min(buffer.length, len), processor);
+                if (readed <= 0) {
+                    throw new IOException("Unexpected end of stream resuming upload");
+                }
+                len -= readed;
+            }
+            return;
+        }
+        while (len > 0) {
+            long skipped = is.skip(len);
+            if (skipped <= 0) {
+                if (is.read() < 0) {
+                    throw new IOException("Unexpected end of stream resuming upload");
+                }
+                skipped = 1;
+            }
+            len -= skipped;
+        }
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes from the stream into the buffer,
+     * updating the processor with them if not <code>null</code>
+     * @return bytes read, 0 or less at end of stream
+     */
+    private int readChunk(InputStream is, byte[] buffer, int len, BufferProcessor processor) throws IOException {
+        int total = 0;
+        int readed;
+        while (total < len && (readed = is.read(buffer, total, len - total)) > 0) {
+            total += readed;
+        }
+        if (processor != null && total > 0) {
+            processor.update(buffer, 0, total);
+        }
+        return total;
+    }
+
+    private void notifyProgress(long offset, long uploadSize) {
+        int percent = uploadSize > 0 ? (int) ((100f * (float) offset) / (float) uploadSize) : 0;
+        log.debug("CHUNK UPLOADED {}%", percent);
+        if (uploadProgressListener != null) {
+            synchronized (uploadProgressListener) {
+                uploadProgressListener.uploadProgress(percent, offset, uploadSize);
+            }
+        }
+    }
+
     private void checkError(Map params,String result) throws ApiException{
-        if (api.isError(result)) {
+        ResponseStatus status = api.getResponseStatus(result);
+        if (status.isError()) {
             String component = String.valueOf(params.get("component"));
             log.warn("{} error {}",component,result);
-            throw new ApiException(api.getErrorCode(result),api.getErrorMessage(result));
+            throw new ApiException(status.getCode(),status.getMessage());
         }
     }
 }
\ No newline at end of file
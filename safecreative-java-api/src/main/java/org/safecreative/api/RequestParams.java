@@ -0,0 +1,286 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Api request parameters.<br/>
+ * A map keeping its keys in canonical (sorted) order as they are inserted, stored in
+ * two parallel arrays, so signing and form encoding traverse it directly without copying
+ * or sorting keys. {@link #clear()} keeps the arrays, an instance can be reset and reused
+ * between calls.
+ * Like <code>HashMap</code> it is not thread safe, unlike it <code>null</code> keys are not allowed.
+ */
+public class RequestParams extends AbstractMap<String, String> {
+
+    private String[] keys;
+    private String[] values;
+    private int size;
+    private int modCount;
+    private transient Set<Map.Entry<String, String>> entrySet;
+
+    public RequestParams() {
+        keys = new String[16];
+        values = new String[16];
+    }
+
+    /**
+     * Constructor
+     * @param values pairs of key,value
+     * @see #add(Object...)
+     */
+    public RequestParams(Object... values) {
+        this();
+        add(values);
+    }
+
+    /**
+     * Puts pairs of key,value, keys and non <code>null</code> values are converted with <code>String.valueOf</code>
+     * @param values pairs of key,value
+     * @return this parameters
+     */
+    public RequestParams add(Object... values) {
+        if (values != null && values.length % 2 != 0) {
+            throw new IllegalArgumentException("odd value array size");
+        }
+        if (values != null) {
+            for (int i = 0; i < values.length; i += 2) {
+                Object value = values[i + 1];
+                put(String.valueOf(values[i]), value == null ? null : String.valueOf(value));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param index parameter index, in key order
+     * @return parameter key
+     */
+    public String getKey(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    /**
+     * @param index parameter index, in key order
+     * @return parameter value
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("null key");
+        }
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            String old = values[index];
+            values[index] = value;
+            return old;
+        }
+        index = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        String old = values[index];
+        removeAt(index);
+        return old;
+    }
+
+    /**
+     * Removes every parameter keeping the allocated capacity
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    RequestParams.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    private class Entry implements Map.Entry<String, String> {
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        public String getKey() {
+            return keys[index];
+        }
+
+        public String getValue() {
+            return values[index];
+        }
+
+        public String setValue(String value) {
+            String old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return getKey().equals(e.getKey())
+                    && (getValue() == null ? e.getValue() == null : getValue().equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public Map.Entry<String, String> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import org.safecreative.api.transport.Transport;
+import org.safecreative.api.util.Base64FormEncoder;
+import org.safecreative.api.util.Digest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Api request signer.<br/>
+ * Builds the form encoded body and its signature in a single pass over the sorted parameters
+ * ({@link RequestParams} are traversed as they are, other maps have their keys sorted first):
+ * the canonical string <code>privatekey&amp;key1=value1&amp;key2=value2...</code> is fed UTF-8
+ * encoded straight into a SHA-1 digest without being built, while the parameters are URL encoded
+ * (as <code>URLEncoder</code> with UTF-8 does) into the body.
+ * A binary parameter can be signed Base64 encoded straight from its buffer, giving a body
+ * that streams the encoded data between the parameters before and after it.
+ * Digests and buffers are reused per thread.
+ */
+public final class RequestSigner {
+
+    private static Logger log = LoggerFactory.getLogger(RequestSigner.class);
+    private static final ThreadLocal<RequestSigner> signers = new ThreadLocal<RequestSigner>() {
+        @Override
+        protected RequestSigner initialValue() {
+            return new RequestSigner();
+        }
+    };
+    private static final char[] URL_HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final MessageDigest digest;
+    private final byte[] bytes = new byte[512];
+    private int count;
+    private StringBuilder body = new StringBuilder(256);
+    private String[] keys = new String[16];
+
+    private RequestSigner() {
+        try {
+            digest = MessageDigest.getInstance(Digest.SHA1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Signs parameters
+     * @param params call parameters, <code>null</code> values are skipped
+     * @param privateKey private key used to sign
+     * @return form encoded parameters sorted by key followed by the <code>signature</code> parameter
+     */
+    public static String sign(Map<String, String> params, String privateKey) {
+        return signers.get().signParams(params, privateKey);
+    }
+
+    /**
+     * Form encodes parameters in map order, <code>null</code> values are encoded empty
+     * @param params call parameters
+     * @return form encoded parameters
+     */
+    public static String encode(Map<String, String> params) {
+        return signers.get().encodeParams(params);
+    }
+
+    /**
+     * Signs parameters and a binary parameter sent Base64 encoded, which takes its sorted place
+     * among the other parameters. The data is encoded once to sign it and again when the body
+     * is written, so it must not change until the request is sent.
+     * @param params call parameters, <code>null</code> values are skipped
+     * @param dataParam binary parameter name, replacing any parameter of the same name
+     * @param data binary parameter buffer
+     * @param offset binary parameter buffer offset
+     * @param length binary parameter length
+     * @param privateKey private key used to sign
+     * @return signed request body
+     */
+    public static SignedData signData(Map<String, String> params, String dataParam, byte[] data, int offset, int length,
+            String privateKey) {
+        return signers.get().signDataParams(params, dataParam, data, offset, length, privateKey);
+    }
+
+    private String signParams(Map<String, String> params, String privateKey) {
+        StringBuilder out = resetBody();
+        digest.reset();
+        count = 0;
+        update(privateKey);
+        int size = sortedKeys(params);
+        for (int i = 0; i < size; i++) {
+            String key = sortedKey(params, i);
+            appendParam(key, sortedValue(params, i, key), out, out.length() > 0);
+        }
+        flush();
+        Digest.appendHex(out.append("&signature="), digest.digest());
+        return out.toString();
+    }
+
+    private SignedData signDataParams(Map<String, String> params, String dataParam, byte[] data, int offset, int length,
+            String privateKey) {
+        StringBuilder out = resetBody();
+        digest.reset();
+        count = 0;
+        update(privateKey);
+        String head = null;
+        long formLength = 0;
+        int size = sortedKeys(params);
+        for (int i = 0; i <= size; i++) {
+            String key = i < size ? sortedKey(params, i) : null;
+            if (head == null && (key == null || key.compareTo(dataParam) >= 0)) {
+                // Parameters so far make the body head, the data is signed as its Base64 text
+                update('&');
+                update(dataParam);
+                update('=');
+                flush();
+                if (out.length() > 0) {
+                    out.append('&');
+                }
+                head = out.append(dataParam).append('=').toString();
+                out.setLength(0);
+                FormLengthDigestStream signer = new FormLengthDigestStream(digest);
+                try {
+                    Base64FormEncoder.encode(data, offset, length, false, signer);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                formLength = signer.formLength;
+            }
+            if (key != null && !key.equals(dataParam)) {
+                appendParam(key, sortedValue(params, i, key), out, head != null || out.length() > 0);
+            }
+        }
+        flush();
+        Digest.appendHex(out.append("&signature="), digest.digest());
+        return new SignedData(head, data, offset, length, formLength, out.toString());
+    }
+
+    /**
+     * @return number of parameters, sorting the keys of maps other than {@link RequestParams}
+     */
+    private int sortedKeys(Map<String, String> params) {
+        return params instanceof RequestParams ? params.size() : sortKeys(params);
+    }
+
+    /**
+     * @return key at a sorted position, see {@link #sortedKeys(Map)}
+     */
+    private String sortedKey(Map<String, String> params, int i) {
+        if (params instanceof RequestParams) {
+            return ((RequestParams) params).getKey(i);
+        }
+        String key = keys[i];
+        keys[i] = null;
+        return key;
+    }
+
+    private static String sortedValue(Map<String, String> params, int i, String key) {
+        return params instanceof RequestParams ? ((RequestParams) params).getValue(i) : params.get(key);
+    }
+
+    /**
+     * Feeds a parameter into the digest and appends it URL encoded to the body
+     * @param separate if <code>true</code> the parameter is preceded by '&amp;'
+     */
+    private void appendParam(String key, String value, StringBuilder out, boolean separate) {
+        if (value == null) {
+            log.debug("null param {}", key);
+            return;
+        }
+        update('&');
+        update(key);
+        update('=');
+        update(value);
+        if (separate) {
+            out.append('&');
+        }
+        out.append(key).append('=');
+        urlEncode(value, out);
+    }
+
+    private String encodeParams(Map<String, String> params) {
+        StringBuilder out = resetBody();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (out.length() > 0) {
+                out.append('&');
+            }
+            out.append(param.getKey()).append('=');
+            if (param.getValue() != null) {
+                urlEncode(param.getValue(), out);
+            }
+        }
+        return out.toString();
+    }
+
+    private int sortKeys(Map<String, String> params) {
+        int size = params.size();
+        if (keys.length < size) {
+            keys = new String[Math.max(size, keys.length * 2)];
+        }
+        int i = 0;
+        for (String key : params.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys, 0, size);
+        return size;
+    }
+
+    private StringBuilder resetBody() {
+        if (body.capacity() > MAX_RETAINED_CAPACITY) {
+            body = new StringBuilder(256);
+        }
+        body.setLength(0);
+        return body;
+    }
+
+    /**
+     * URL encodes a value as <code>URLEncoder.encode(value, "UTF-8")</code>
+     */
+    static void urlEncode(String value, StringBuilder out) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && UNRESERVED[c]) {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendEscaped(c, out);
+            } else if (c < 0x800) {
+                appendEscaped(0xC0 | (c >> 6), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                appendEscaped(0xF0 | (cp >> 18), out);
+                appendEscaped(0x80 | ((cp >> 12) & 0x3F), out);
+                appendEscaped(0x80 | ((cp >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (cp & 0x3F), out);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced as the UTF-8 encoder does
+                appendEscaped('?', out);
+            } else {
+                appendEscaped(0xE0 | (c >> 12), out);
+                appendEscaped(0x80 | ((c >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    private static void appendEscaped(int b, StringBuilder out) {
+        out.append('%').append(URL_HEX[(b >> 4) & 0x0F]).append(URL_HEX[b & 0x0F]);
+    }
+
+    /**
+     * Feeds the UTF-8 bytes of a string into the digest
+     */
+    private void update(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                update(c);
+            } else if (c < 0x800) {
+                update(0xC0 | (c >> 6));
+                update(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                update(0xF0 | (cp >> 18));
+                update(0x80 | ((cp >> 12) & 0x3F));
+                update(0x80 | ((cp >> 6) & 0x3F));
+                update(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                update('?');
+            } else {
+                update(0xE0 | (c >> 12));
+                update(0x80 | ((c >> 6) & 0x3F));
+                update(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void update(int b) {
+        if (count == bytes.length) {
+            flush();
+        }
+        bytes[count++] = (byte) b;
+    }
+
+    private void flush() {
+        digest.update(bytes, 0, count);
+        count = 0;
+    }
+
+    /**
+     * Signed request body with a Base64 encoded binary parameter, written as the encoded
+     * parameters before it, the form encoded data and the parameters after it with the signature
+     */
+    public static final class SignedData implements Transport.BodyWriter {
+        private final byte[] head;
+        private final byte[] tail;
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+        private final long contentLength;
+
+        private SignedData(String head, byte[] data, int offset, int length, long formLength, String tail) {
+            this.head = head.getBytes(StandardCharsets.US_ASCII);
+            this.tail = tail.getBytes(StandardCharsets.US_ASCII);
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.contentLength = this.head.length + formLength + this.tail.length;
+        }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(head);
+            Base64FormEncoder.encode(data, offset, length, true, out);
+            out.write(tail);
+        }
+
+        /**
+         * @return the body with the data replaced by its length, for logging
+         */
+        @Override
+        public String toString() {
+            return new String(head, StandardCharsets.US_ASCII) + "[" + length + " bytes]"
+                    + new String(tail, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Signs Base64 output while counting its form encoded length
+     */
+    private static class FormLengthDigestStream extends OutputStream {
+        private final MessageDigest digest;
+        private long formLength;
+
+        FormLengthDigestStream(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+            formLength += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '+' || b[i] == '/' || b[i] == '=' || b[i] == '\n') {
+                    formLength += 2;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Api response classification: success, error or exception, with the error code and message.<br/>
+ * Classifies with a single forward scan: a response is an error or exception when its root element
+ * is <code>error</code> (with an <code>errorId</code>) or <code>exception</code> (with an <code>exceptionId</code>),
+ * so successful responses are only read up to their root element name. As in the parsed document,
+ * only the first code and message children of the root element are taken.
+ */
+public final class ResponseStatus {
+
+    public enum Kind {
+        SUCCESS, ERROR, EXCEPTION
+    }
+
+    private static final ResponseStatus SUCCESS = new ResponseStatus(Kind.SUCCESS, null, null);
+
+    private final Kind kind;
+    private final String code;
+    private final String message;
+
+    private ResponseStatus(Kind kind, String code, String message) {
+        this.kind = kind;
+        this.code = code;
+        this.message = message;
+    }
+
+    /**
+     * Classifies a response
+     * @param response api xml response
+     * @return response status, never <code>null</code>
+     */
+    public static ResponseStatus classify(String response) {
+        if (response == null || response.isEmpty()) {
+            return SUCCESS;
+        }
+        int pos = skipProlog(response);
+        if (pos < 0 || pos >= response.length() || response.charAt(pos) != '<') {
+            return SUCCESS;
+        }
+        Kind kind;
+        String codeElement;
+        String messageElement;
+        if (isName(response, pos + 1, "error")) {
+            kind = Kind.ERROR;
+            codeElement = "errorId";
+            messageElement = "errorMessage";
+        } else if (isName(response, pos + 1, "exception")) {
+            kind = Kind.EXCEPTION;
+            codeElement = "exceptionId";
+            messageElement = "exceptionMessage";
+        } else {
+            return SUCCESS;
+        }
+        boolean hasCode = false;
+        boolean hasMessage = false;
+        String code = null;
+        String message = "";
+        pos = response.indexOf('>', pos);
+        if (pos < 0 || response.charAt(pos - 1) == '/') {
+            return SUCCESS;
+        }
+        // Only the first code and message children of the root element count, as in the parsed document
+        int depth = 1;
+        while (pos >= 0 && (pos = response.indexOf('<', pos)) >= 0) {
+            if (response.startsWith("</", pos)) {
+                if (--depth == 0) {
+                    break;
+                }
+                pos += 2;
+                continue;
+            }
+            if (response.startsWith("<!--", pos)) {
+                pos = skip(response, pos, "-->");
+            } else if (response.startsWith("<![CDATA[", pos)) {
+                pos = skip(response, pos, "]]>");
+            } else if (response.startsWith("<?", pos)) {
+                pos = skip(response, pos, "?>");
+            } else {
+                int tagEnd = response.indexOf('>', pos);
+                if (tagEnd < 0) {
+                    break;
+                }
+                boolean empty = response.charAt(tagEnd - 1) == '/';
+                boolean isCode = depth == 1 && !hasCode && isName(response, pos + 1, codeElement);
+                boolean isMessage = depth == 1 && !isCode && !hasMessage && isName(response, pos + 1, messageElement);
+                if (isCode || isMessage) {
+                    String value = "";
+                    if (!empty) {
+                        int textEnd = response.indexOf('<', tagEnd + 1);
+                        if (textEnd < 0 || !response.startsWith("</", textEnd)) {
+                            // Markup within the value (CDATA, comments or elements)
+                            return classifyParsed(response, kind);
+                        }
+                        value = unescape(response.substring(tagEnd + 1, textEnd));
+                        if (value == null) {
+                            return classifyParsed(response, kind);
+                        }
+                    }
+                    if (isCode) {
+                        hasCode = true;
+                        code = value;
+                    } else {
+                        hasMessage = true;
+                        message = value;
+                    }
+                }
+                if (!empty) {
+                    depth++;
+                }
+                pos = tagEnd + 1;
+            }
+        }
+        if (!hasCode) {
+            return SUCCESS;
+        }
+        return new ResponseStatus(kind, code, message);
+    }
+
+    /**
+     * Classifies a response with markup in its error values through its parsed document
+     */
+    private static ResponseStatus classifyParsed(String response, Kind kind) {
+        ApiResponse parsed = new ApiResponse(response);
+        return new ResponseStatus(kind, parsed.getErrorCode(), parsed.getErrorMessage());
+    }
+
+    private static int skipProlog(String response) {
+        int pos = 0;
+        int length = response.length();
+        while (pos >= 0 && pos < length) {
+            char c = response.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\uFEFF') {
+                pos++;
+            } else if (response.startsWith("<?", pos)) {
+                pos = skip(response, pos, "?>");
+            } else if (response.startsWith("<!--", pos)) {
+                pos = skip(response, pos, "-->");
+            } else if (response.startsWith("<!", pos)) {
+                pos = skip(response, pos, ">");
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static int skip(String response, int pos, String end) {
+        int endPos = response.indexOf(end, pos);
+        return endPos < 0 ? -1 : endPos + end.length();
+    }
+
+    /**
+     * @return <code>true</code> if the tag name at the given position is the given name
+     */
+    private static boolean isName(String response, int pos, String name) {
+        if (!response.startsWith(name, pos)) {
+            return false;
+        }
+        int end = pos + name.length();
+        if (end >= response.length()) {
+            return false;
+        }
+        char c = response.charAt(end);
+        return c == '>' || c == '/' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * @return unescaped text or <code>null</code> if the text needs a parser (line end normalization)
+     */
+    private static String unescape(String text) {
+        if (text.indexOf('\r') >= 0) {
+            return null;
+        }
+        return text.indexOf('&') < 0 ? text : StringEscapeUtils.unescapeXml(text);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return <code>true</code> if the response is an error or an exception
+     */
+    public boolean isError() {
+        return kind != Kind.SUCCESS;
+    }
+
+    /**
+     * @return error or exception code, <code>null</code> on success
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return error or exception message, empty if missing or <code>null</code> on success
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -24,30 +24,16 @@ OTHER DEALINGS IN THE SOFTWARE.
  */
 package org.safecreative.api;
 
-import org.safecreative.api.util.Digest;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import org.apache.commons.lang.StringUtils;
+import org.safecreative.api.transport.HttpClientTransport;
+import org.safecreative.api.transport.Transport;
 import org.safecreative.api.util.IOHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
 
 /**
  * SafeCreative API frontend
@@ -59,19 +45,22 @@ public class SafeCreativeAPI {
 
     public static final String DEFAULT_ENCODING = "UTF-8";
     public static final String API_ENDPOINT = "/v2/";
+    public static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded;charset=" + DEFAULT_ENCODING;
     public static final String MANAGE_ENDPOINT = "/api-ui/authkey.edit?";
     public static final String MANAGE_EMBEDDABLE_ENDPOINT = "/api-ui/auth?";
     public static final String STATE_REGISTERED = "REGISTERED";
     public static final String STATE_PRE_REGISTERED = "PRE_REGISTERED";
     public static final String NOT_AUTHORIZED_ERROR = "NotAuthorized";
 	public static final String INVALID_TIME_ERROR = "InvalidTime";
+    public static final String INVALID_NONCE_KEY_ERROR = "InvalidNonceKey";
     private static Logger log = LoggerFactory.getLogger(SafeCreativeAPI.class);
-    private String baseUrl;    
-    private Long timeOffset;
-    private XPathFactory xpathFactory;
+    private volatile String baseUrl;
+    private ClockSync clockSync;
+    private NonceKeyProvider nonceKeyProvider;
     private String sharedKey, privateKey;
     private String authKey, privateAuthKey;
     private Locale locale;
+    private Transport transport;
 
     public enum AuthkeyLevel {
         GET, ADD, MANAGE
@@ -84,9 +73,14 @@ public class SafeCreativeAPI {
     public SafeCreativeAPI(String sharedKey, String privateKey) {
         this.sharedKey = sharedKey;
         this.privateKey = privateKey;
-        this.xpathFactory = XPathFactory.newInstance();        
     }
 
+    /**
+     * Sets the default api endpoint url, used by calls not given an explicit
+     * base url and for ztime and authkey state lookups
+     *
+     * @param baseUrl default api endpoint url
+     */
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
     }
@@ -123,6 +117,26 @@ public class SafeCreativeAPI {
         return StringUtils.isNotBlank(code) && StringUtils.isNumeric(code) && code.trim().length() == 13;
     }
 
+    /**
+     * Gets the transport used to send api requests, a pooled
+     * <code>HttpClientTransport</code> is created if none was set
+     *
+     * @return the transport
+     */
+    public synchronized Transport getTransport() {
+        if (transport == null) {
+            transport = new HttpClientTransport();
+        }
+        return transport;
+    }
+
+    /**
+     * @param transport the transport to set
+     */
+    public synchronized void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
     /**
      * @return the locale
      */
@@ -162,6 +176,25 @@ public class SafeCreativeAPI {
         return baseUrl + authManageEndpoint + signParams(params, privatekey);
     }
 
+    /**
+     * @return nonce key provider used by noncekey signed calls, created on first use
+     */
+    public synchronized NonceKeyProvider getNonceKeyProvider() {
+        if (nonceKeyProvider == null) {
+            nonceKeyProvider = new NonceKeyProvider(this);
+        }
+        return nonceKeyProvider;
+    }
+
+    public synchronized void setNonceKeyProvider(NonceKeyProvider nonceKeyProvider) {
+        this.nonceKeyProvider = nonceKeyProvider;
+    }
+
+    /**
+     * Reads the current nonce key of an authkey from the server
+     * @param authKey
+     * @return nonce key
+     */
     public String getNonceKey(String authKey) {
         return evalXml(getAuthKeyState(authKey), "/authkeystate/noncekey");
     }
@@ -175,39 +208,57 @@ public class SafeCreativeAPI {
         return callSigned(params, true, false, false);
     }
 
+    /**
+     * Server time read from the background synchronized clock, never waits for a ztime call
+     * @return server time
+     */
     public String getZTime() {
-        if (timeOffset == null) {
-			log.debug("Building time offset ztime");
-            String result = call("component=ztime");
-            String value = evalXml(result, "/ztime");
-            if (value == null) {
-                throw new RuntimeException("bad ztime");
-            }
-            long ztime = Long.parseLong(value);
-            timeOffset = ztime - getSystemTime();
-			log.debug("ztime={} timeOffset={} systime={}",new Object[]{ztime,timeOffset,ztime-timeOffset});
-            return value;
-        }
-		long ztime = timeOffset + getSystemTime();
-		log.debug("ztime={} timeOffset={} systime={}",new Object[]{ztime,timeOffset,ztime-timeOffset});
+        ClockSync clock = getClockSync();
+		long ztime = clock.currentTimeMillis();
+		log.debug("ztime={} timeOffset={} synced={}",new Object[]{ztime,clock.getOffset(),clock.isSynced()});
         return Long.toString(ztime);
     }
 
-    //////////////////////////////////////////////////////// CORE:
-    public Map<String, String> createParams(Object... values) {
-        if (values != null && values.length % 2 != 0) {
-            throw new IllegalArgumentException("odd value array size");
+    /**
+     * @return server clock, started on first use
+     */
+    public synchronized ClockSync getClockSync() {
+        if (clockSync == null) {
+            clockSync = new ClockSync(this);
+            clockSync.start();
         }
-        Map<String, String> result = new HashMap<String, String>();
-        if (values != null) {
-            int size = values.length;
-            Object value;
-            for (int i = 0; i < size; i += 2) {
-                value = values[i + 1];
-                result.put(String.valueOf(values[i]), value == null ? null : String.valueOf(value));
-            }
+        return clockSync;
+    }
+
+    /**
+     * Sets the server clock, it should be already started
+     * @param clockSync
+     */
+    public synchronized void setClockSync(ClockSync clockSync) {
+        this.clockSync = clockSync;
+    }
+
+    /**
+     * Stops the background threads of this api, the server clock sync and the nonce key
+     * prefetch. The transport is left open, as it may be shared.
+     */
+    public synchronized void shutdown() {
+        if (clockSync != null) {
+            clockSync.stop();
         }
-        return result;
+        if (nonceKeyProvider != null) {
+            nonceKeyProvider.shutdown();
+        }
+    }
+
+    //////////////////////////////////////////////////////// CORE:
+    /**
+     * Creates call parameters
+     * @param values pairs of key,value
+     * @return sorted call parameters, a {@link RequestParams} instance
+     */
+    public Map<String, String> createParams(Object... values) {
+        return new RequestParams(values);
     }
 
     public String callSigned(Map<String, String> params, boolean ztime, boolean noncekey) {
@@ -223,16 +274,129 @@ public class SafeCreativeAPI {
     }
 
     public String callSigned(Map<String, String> params, String privateKey, boolean ztime, boolean noncekey,boolean addLocale) {
+        return callSigned(baseUrl, params, privateKey, ztime, noncekey, addLocale);
+    }
+
+    /**
+     * Signed call to an explicit endpoint
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params call parameters
+     * @param privateKey private key used to sign
+     * @param ztime if <code>true</code> adds ztime parameter
+     * @param noncekey if <code>true</code> adds noncekey parameter
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @return response
+     */
+    public String callSigned(final String baseUrl, final Map<String, String> params, final String privateKey, boolean ztime, boolean noncekey,boolean addLocale) {
+        addSignedParams(params, ztime, addLocale);
+        if (!noncekey) {
+            return call(baseUrl, signParams(params, privateKey));
+        }
+        return callWithNonceKey(params, new ResponseCall() {
+            String call() {
+                return SafeCreativeAPI.this.call(baseUrl, signParams(params, privateKey));
+            }
+        });
+    }
+
+    /**
+     * Signed call to an explicit endpoint whose response is decoded straight from the response stream
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params call parameters
+     * @param privateKey private key used to sign
+     * @param ztime if <code>true</code> adds ztime parameter
+     * @param noncekey if <code>true</code> adds noncekey parameter
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @param handler response stream handler, error responses should be thrown as
+     * an <code>IOException</code> caused by an <code>ApiException</code>
+     * @return handler result
+     */
+    public <T> T callSigned(final String baseUrl, final Map<String, String> params, final String privateKey, boolean ztime, boolean noncekey,
+            boolean addLocale, final Transport.ResponseHandler<T> handler) {
+        addSignedParams(params, ztime, addLocale);
+        if (!noncekey) {
+            return post(baseUrl, signParams(params, privateKey), null, handler);
+        }
+        return callWithNonceKey(params, new SignedCall<T>() {
+            T call() {
+                return post(baseUrl, signParams(params, privateKey), null, handler);
+            }
+        });
+    }
+
+    private void addSignedParams(Map<String, String> params, boolean ztime, boolean addLocale) {
         if (ztime) {
             params.put("ztime", getZTime());
         }
-        if (noncekey) {
-            params.put("noncekey", getNonceKey(authKey));
-        }
         if (addLocale) {
             addLocale(params);
         }
-        return call(signParams(params, privateKey));
+    }
+
+    /**
+     * Signed request sent by {@link #callWithNonceKey(Map, SignedCall)}, signing the parameters on each call
+     */
+    private static abstract class SignedCall<T> {
+        abstract T call();
+
+        /**
+         * @return error code if the result is an api error response, <code>null</code> otherwise
+         */
+        String getErrorCode(T result) {
+            return null;
+        }
+    }
+
+    /**
+     * Signed request returning the xml response
+     */
+    private static abstract class ResponseCall extends SignedCall<String> {
+        @Override
+        String getErrorCode(String response) {
+            ResponseStatus status = ResponseStatus.classify(response);
+            return status.isError() ? status.getCode() : null;
+        }
+    }
+
+    /**
+     * Sends a signed request with the authkey nonce key. If the server rejects a nonce key taken
+     * from the cache, which may be stale, with an <code>INVALID_NONCE_KEY_ERROR</code>, the request
+     * is sent once more with a fresh one. Other errors are never retried, the call may not be idempotent.
+     */
+    private <T> T callWithNonceKey(Map<String, String> params, SignedCall<T> call) {
+        String nonceAuthKey = authKey;
+        NonceKeyProvider provider = getNonceKeyProvider();
+        String nonceKey = provider.takeCached(nonceAuthKey);
+        if (nonceKey != null) {
+            params.put("noncekey", nonceKey);
+            try {
+                T result = call.call();
+                String errorCode = call.getErrorCode(result);
+                if (!INVALID_NONCE_KEY_ERROR.equals(errorCode)) {
+                    provider.release(nonceAuthKey, errorCode == null);
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (!(e.getCause() instanceof ApiException)
+                        || !INVALID_NONCE_KEY_ERROR.equals(((ApiException) e.getCause()).getErrorCode())) {
+                    provider.release(nonceAuthKey, false);
+                    throw e;
+                }
+            }
+            log.debug("cached nonce key {} rejected, retrying with a fresh one", nonceKey);
+            provider.invalidate(nonceAuthKey);
+        }
+        params.put("noncekey", provider.take(nonceAuthKey));
+        boolean accepted = false;
+        try {
+            T result = call.call();
+            accepted = call.getErrorCode(result) == null;
+            return result;
+        } finally {
+            provider.release(nonceAuthKey, accepted);
+        }
     }
 
     public String call(Map<String, String> params) {
@@ -240,72 +404,144 @@ public class SafeCreativeAPI {
     }
 
     public String call(Map<String, String> params,boolean addLocale) {
-        StringBuilder encoded = new StringBuilder();
+        return call(baseUrl, params, addLocale);
+    }
+
+    /**
+     * Call to an explicit endpoint
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params call parameters
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @return response
+     */
+    public String call(String baseUrl, Map<String, String> params,boolean addLocale) {
+        return call(baseUrl, encodeParams(params, addLocale));
+    }
+
+    /**
+     * Call to an explicit endpoint whose response is decoded straight from the response stream
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params call parameters
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @param handler response stream handler, error responses should be thrown as
+     * an <code>IOException</code> caused by an <code>ApiException</code>
+     * @return handler result
+     */
+    public <T> T call(String baseUrl, Map<String, String> params, boolean addLocale, Transport.ResponseHandler<T> handler) {
+        return post(baseUrl, encodeParams(params, addLocale), null, handler);
+    }
+
+    private String encodeParams(Map<String, String> params, boolean addLocale) {
         if(addLocale) {
             addLocale(params);
         }
-        for (String param : params.keySet()) {
-            String value = params.get(param);
-            try {
-                encoded.append("&" + param + "=" + (value == null ? "" : URLEncoder.encode(value, DEFAULT_ENCODING)));
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
+        return RequestSigner.encode(params);
+    }
+
+    public String call(String params) {
+        return call(baseUrl, params);
+    }
+
+    /**
+     * Call to an explicit endpoint
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params encoded call parameters
+     * @return response
+     */
+    public String call(String baseUrl, String params) {
+        return post(baseUrl, params, null);
+    }
+
+    /**
+     * Signed call to an explicit endpoint with a binary parameter sent Base64 encoded.
+     * The parameter is signed and form encoded straight from the data buffer into the
+     * request body, without building intermediate strings.
+     *
+     * @param baseUrl endpoint url for this call only
+     * @param params call parameters
+     * @param dataParam binary parameter name
+     * @param data binary parameter buffer
+     * @param offset binary parameter buffer offset
+     * @param length binary parameter length
+     * @param privateKey private key used to sign
+     * @param ztime if <code>true</code> adds ztime parameter
+     * @param noncekey if <code>true</code> adds noncekey parameter
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @return response
+     */
+    public String callSignedData(final String baseUrl, final Map<String, String> params, final String dataParam,
+            final byte[] data, final int offset, final int length, final String privateKey,
+            boolean ztime, boolean noncekey, boolean addLocale) {
+        addSignedParams(params, ztime, addLocale);
+        if (!noncekey) {
+            return postSignedData(baseUrl, params, dataParam, data, offset, length, privateKey);
+        }
+        return callWithNonceKey(params, new ResponseCall() {
+            String call() {
+                return postSignedData(baseUrl, params, dataParam, data, offset, length, privateKey);
             }
+        });
+    }
+
+    /**
+     * Signs and posts a call with a binary parameter, see {@link #callSignedData}
+     */
+    private String postSignedData(String baseUrl, Map<String, String> params, String dataParam,
+            byte[] data, int offset, int length, String privateKey) {
+        RequestSigner.SignedData body = RequestSigner.signData(params, dataParam, data, offset, length, privateKey);
+        return post(baseUrl, log.isDebugEnabled() ? body.toString() : null, body);
+    }
+
+    /**
+     * Posts encoded parameters or, if not <code>null</code>, a streamed body
+     * @param params encoded parameters, only logged when body is not <code>null</code>,
+     * may then be <code>null</code> when debug logging is disabled
+     */
+    private String post(String baseUrl, String params, Transport.BodyWriter body) {
+        String response = post(baseUrl, params, body, new Transport.ResponseHandler<String>() {
+            public String handle(InputStream in) throws IOException {
+                return readString(in);
+            }
+        });
+        log.debug(String.format("api response:\n %s\n", response));
+        ResponseStatus status = getResponseStatus(response);
+        if(status.isError()) {
+            checkInvalidTime(status.getCode());
         }
-        return call(encoded.toString().substring(1));
+        return response;
     }
 
-    public String call(String params) {
+    private <T> T post(String baseUrl, String params, Transport.BodyWriter body, Transport.ResponseHandler<T> handler) {
         String uri = baseUrl + API_ENDPOINT;
-        OutputStream os = null;
-		String response = null;
         try {
             log.debug(String.format("api request: \n%s?%s\n", uri, params));
-            URL url = new URL(uri);
-            URLConnection conn = url.openConnection();
-            conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded;charset=" + DEFAULT_ENCODING);
-            conn.setDoOutput(true);
-            conn.setUseCaches(false);
-            os = conn.getOutputStream();
-            os.write(params.getBytes(DEFAULT_ENCODING));
-            response = readString(conn.getInputStream());
-            log.debug(String.format("api response:\n %s\n", response));
-			if(isError(response) && INVALID_TIME_ERROR.equals(getErrorCode(response))) {
-				log.warn("Client time needs resyncing");
-				timeOffset = null;
-			}
-            return response;
+            if (body == null) {
+                return getTransport().post(uri, FORM_CONTENT_TYPE, params.getBytes(DEFAULT_ENCODING), handler);
+            } else {
+                return getTransport().post(uri, FORM_CONTENT_TYPE, body, handler);
+            }
         } catch (Throwable e) {
-            throw new RuntimeException(ApiException.wrap(e,uri+"?"+params,response));
-        } finally {
-            IOHelper.closeQuietly(os);
+            if (e instanceof IOException && e.getCause() instanceof ApiException) {
+                ApiException error = (ApiException) e.getCause();
+                checkInvalidTime(error.getErrorCode());
+                throw new RuntimeException(error);
+            }
+            throw new RuntimeException(ApiException.wrap(e,params == null ? uri : uri+"?"+params,null));
         }
     }
 
-    public String signParams(Map<String, String> params, String privatekey) {
-        StringBuilder unencoded = new StringBuilder();
-        StringBuilder encoded = new StringBuilder();
-
-        List<String> keys = new ArrayList<String>();
-        keys.addAll(params.keySet());
-        Collections.sort(keys);
-
-        for (String key : keys) {
-            String value = params.get(key);
-            if (value == null) {
-                log.debug("null param {}", key);
-                continue;
-            }
-            unencoded.append("&" + key + "=" + value);
-            try {
-                encoded.append("&" + key + "=" + URLEncoder.encode(value, DEFAULT_ENCODING));
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }
+    private void checkInvalidTime(String errorCode) {
+        if (INVALID_TIME_ERROR.equals(errorCode)) {
+            log.warn("Client time needs resyncing");
+            getClockSync().requestSync();
         }
-        String en = encoded.toString().substring(1);
-        String un = unencoded.toString().substring(1);
-        return en + "&signature=" + Digest.getHexDigest(privatekey + "&" + un, Digest.SHA1);
+    }
+
+    public String signParams(Map<String, String> params, String privatekey) {
+        return RequestSigner.sign(params, privatekey);
     }
 
     public String getResponseState(String response) throws Exception {
@@ -313,38 +549,44 @@ public class SafeCreativeAPI {
     }
 
     public String getResponseState(String responseType, String response) throws Exception {
-        return evalXml(response, String.format("/%s/state", responseType));
+        return parseResponse(response).getState(responseType);
     }
 
     public boolean isError(String result) {
-        return !StringUtils.isEmpty(result) && (
-                (hasXmlElement(result, "error") && hasXmlElement(result, "errorId")) ||
-                (hasXmlElement(result, "exception") && hasXmlElement(result, "exceptionId")) );
+        return getResponseStatus(result).isError();
+    }
+
+    /**
+     * Classifies a response, successful ones are only read up to their root element
+     * @param response xml response
+     * @return response status with the error code and message if any
+     */
+    public ResponseStatus getResponseStatus(String response) {
+        return ResponseStatus.classify(response);
     }
 
     public String getErrorCode(String response) {
-        if (response.indexOf("error") != -1) {
-            return evalXml(response, "/error/errorId");
-        }
-        return evalXml(response, "/exception/exceptionId");
+        ResponseStatus status = getResponseStatus(response);
+        return status.isError() ? status.getCode() : parseResponse(response).getErrorCode();
     }
 
     public String getErrorMessage(String response) {
-        if (response.indexOf("error") != -1) {
-            return evalXml(response, "/error/errorMessage");
-        }
-        return evalXml(response, "/exception/exceptionMessage");
+        ResponseStatus status = getResponseStatus(response);
+        return status.isError() ? status.getMessage() : parseResponse(response).getErrorMessage();
     }
 
     public String evalXml(String xml, String path) {
-        XPath xpath = xpathFactory.newXPath();
-        InputSource source = new InputSource(new StringReader(xml));
-        String result = null;
-        try {
-            result = xpath.evaluate(path, source);
-        } catch (XPathExpressionException ex) {
-        }
-        return result;
+        return parseResponse(xml).evalXml(path);
+    }
+
+    /**
+     * Parses a response, callers running several queries on it should keep the result
+     * instead of calling <code>evalXml</code> on the response string each time
+     * @param xml response
+     * @return parsed response
+     */
+    public ApiResponse parseResponse(String xml) {
+        return new ApiResponse(xml);
     }
 
     /**
@@ -371,9 +613,4 @@ public class SafeCreativeAPI {
     protected String readString(InputStream in) throws IOException {
         return IOHelper.readString(in, DEFAULT_ENCODING);
     }
-
-    private long getSystemTime() {
-        return System.currentTimeMillis();
-    }
 }
-
@@ -0,0 +1,309 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+import org.safecreative.api.util.Digest;
+import org.safecreative.api.util.IOHelper;
+import org.safecreative.api.util.LocalFilePartSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resumable api upload session.
+ * Keeps upload id, upload url and last acknowledged offset of an api (non post) upload
+ * in a small checkpoint file, so an interrupted upload may be continued from
+ * the last good chunk by a later process instead of starting again from offset 0.
+ * Chunks acknowledged out of order (pipelined uploads) only advance the offset once
+ * every previous chunk is acknowledged too.<br/>
+ * Besides file name and length the checkpoint keeps a content check, the file modification
+ * time when known and a digest of the first <code>HEAD_CHECK_LENGTH</code> bytes, so a file
+ * changed in between is uploaded again instead of resumed.
+ */
+public class UploadSession {
+
+    /**
+     * Length of the file head whose digest is kept as content check
+     */
+    public static final int HEAD_CHECK_LENGTH = 64 * 1024;
+    private static Logger log = LoggerFactory.getLogger(UploadSession.class);
+    private static final String UPLOAD_ID = "uploadid";
+    private static final String UPLOAD_URL = "uploadurl";
+    private static final String FILE_NAME = "filename";
+    private static final String LENGTH = "length";
+    private static final String OFFSET = "offset";
+    private static final String LAST_MODIFIED = "lastmodified";
+    private static final String HEAD_DIGEST = "headdigest";
+    private final File checkpointFile;
+    private String uploadID;
+    private String uploadURL;
+    private String fileName;
+    private long length;
+    private long lastModified;
+    private String headDigest;
+    private long offset;
+    private final Map<Long, Integer> pending = new TreeMap<Long, Integer>();
+
+    /**
+     * Constructor
+     * @param checkpointFile file where session is saved
+     * @param uploadURL upload url returned by work.upload.lookup
+     * @param uploadID upload id returned by work.upload.lookup
+     * @param fileName uploaded file name
+     * @param length uploaded file length
+     * @param lastModified uploaded file modification time, 0 if unknown
+     * @param headDigest uploaded file head digest
+     * @see #getLastModified(PartSource)
+     * @see #getHeadDigest(PartSource)
+     */
+    public UploadSession(File checkpointFile, String uploadURL, String uploadID, String fileName, long length,
+            long lastModified, String headDigest) {
+        this.checkpointFile = checkpointFile;
+        this.uploadURL = uploadURL;
+        this.uploadID = uploadID;
+        this.fileName = fileName;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.headDigest = headDigest;
+    }
+
+    /**
+     * Creates the session of an upload, reading its content check from the uploaded source
+     * @param checkpointFile file where session is saved
+     * @param uploadURL upload url returned by work.upload.lookup
+     * @param uploadID upload id returned by work.upload.lookup
+     * @param source uploaded source
+     * @return new session, not saved yet
+     * @throws IOException on source read error
+     */
+    public static UploadSession create(File checkpointFile, String uploadURL, String uploadID, PartSource source)
+            throws IOException {
+        return new UploadSession(checkpointFile, uploadURL, uploadID, source.getFileName(), source.getLength(),
+                getLastModified(source), getHeadDigest(source));
+    }
+
+    /**
+     * Loads a saved session
+     * @param checkpointFile file where session was saved
+     * @return saved session or <code>null</code> if there is no readable checkpoint
+     */
+    public static UploadSession load(File checkpointFile) {
+        if (checkpointFile == null || !checkpointFile.isFile()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(checkpointFile);
+            Properties props = new Properties();
+            props.load(in);
+            UploadSession session = new UploadSession(checkpointFile, props.getProperty(UPLOAD_URL),
+                    props.getProperty(UPLOAD_ID), props.getProperty(FILE_NAME),
+                    Long.parseLong(props.getProperty(LENGTH)),
+                    Long.parseLong(props.getProperty(LAST_MODIFIED, "0")), props.getProperty(HEAD_DIGEST));
+            session.offset = Long.parseLong(props.getProperty(OFFSET, "0"));
+            if (session.uploadURL == null || session.uploadID == null) {
+                return null;
+            }
+            return session;
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable upload checkpoint {}: {}", checkpointFile, e.toString());
+            return null;
+        } finally {
+            IOHelper.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Checks whether this session belongs to an upload of the given source, comparing its
+     * name, length, modification time when known and head digest
+     * @param source uploaded source
+     * @return <code>true</code> if the session may be resumed with the source
+     * @throws IOException on source read error
+     */
+    public boolean matches(PartSource source) throws IOException {
+        String name = source.getFileName();
+        if (length != source.getLength() || !(fileName == null ? name == null : fileName.equals(name))) {
+            return false;
+        }
+        long modified = getLastModified(source);
+        if (lastModified != 0 && modified != 0 && lastModified != modified) {
+            return false;
+        }
+        return headDigest != null && headDigest.equals(getHeadDigest(source));
+    }
+
+    /**
+     * @param source uploaded source
+     * @return source file modification time, 0 if unknown
+     */
+    public static long getLastModified(PartSource source) {
+        return source instanceof LocalFilePartSource ? ((LocalFilePartSource) source).getFile().lastModified() : 0;
+    }
+
+    /**
+     * @param source uploaded source
+     * @return SHA-1 hex digest of the first <code>HEAD_CHECK_LENGTH</code> bytes of the source
+     * @throws IOException on source read error
+     */
+    public static String getHeadDigest(PartSource source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = Digest.getMessageDigest(Digest.SHA1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[IOHelper.DEFAULT_BUFFER_SIZE];
+        InputStream in = null;
+        try {
+            in = source.createInputStream();
+            int remaining = HEAD_CHECK_LENGTH;
+            int readed;
+            while (remaining > 0 && (readed = in.read(buffer, 0, Math.min(buffer.length, remaining))) > 0) {
+                digest.update(buffer, 0, readed);
+                remaining -= readed;
+            }
+        } finally {
+            IOHelper.closeQuietly(in);
+        }
+        return Digest.toHex(digest.digest());
+    }
+
+    /**
+     * Records an acknowledged chunk, saving the checkpoint when the contiguous
+     * acknowledged offset advances
+     * @param chunkOffset chunk offset
+     * @param chunkLength chunk length
+     * @throws IOException on checkpoint write error
+     */
+    public synchronized void acknowledge(long chunkOffset, int chunkLength) throws IOException {
+        pending.put(chunkOffset, chunkLength);
+        long acknowledged = offset;
+        Integer len;
+        while ((len = pending.remove(acknowledged)) != null) {
+            acknowledged += len;
+        }
+        if (acknowledged != offset) {
+            offset = acknowledged;
+            save();
+        }
+    }
+
+    /**
+     * Writes the checkpoint file, replacing the previous one atomically
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(UPLOAD_URL, uploadURL);
+        props.setProperty(UPLOAD_ID, uploadID);
+        if (fileName != null) {
+            props.setProperty(FILE_NAME, fileName);
+        }
+        props.setProperty(LENGTH, String.valueOf(length));
+        props.setProperty(LAST_MODIFIED, String.valueOf(lastModified));
+        if (headDigest != null) {
+            props.setProperty(HEAD_DIGEST, headDigest);
+        }
+        props.setProperty(OFFSET, String.valueOf(offset));
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            props.store(out, "Safe Creative upload session");
+        } finally {
+            IOHelper.closeQuietly(out);
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the checkpoint file, once the upload is committed or to discard it
+     */
+    public void delete() {
+        IOHelper.deleteSafely(checkpointFile);
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public String getUploadID() {
+        return uploadID;
+    }
+
+    public String getUploadURL() {
+        return uploadURL;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return uploaded file modification time, 0 if unknown
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return uploaded file head digest
+     */
+    public String getHeadDigest() {
+        return headDigest;
+    }
+
+    /**
+     * @return last acknowledged offset, every byte before it was uploaded
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadSession{uploadID=" + uploadID + ", uploadURL=" + uploadURL + ", fileName=" + fileName
+                + ", length=" + length + ", offset=" + getOffset() + '}';
+    }
+}
@@ -0,0 +1,204 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.safecreative.api.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep-alive connection pooled transport based on commons-httpclient.
+ * Connections are reused between requests to the same host, limited per host
+ * and closed once they have been idle for longer than the idle timeout.
+ */
+public class HttpClientTransport implements Transport {
+
+    public final static int DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+    public final static int DEFAULT_READ_TIMEOUT = 2 * 60 * 1000;
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+    public final static int DEFAULT_MAX_TOTAL_CONNECTIONS = 50;
+    public final static long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+    private static Logger log = LoggerFactory.getLogger(HttpClientTransport.class);
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private HttpClient client;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long lastIdleCheck;
+
+    public HttpClientTransport() {
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT);
+        params.setSoTimeout(DEFAULT_READ_TIMEOUT);
+        params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+        params.setStaleCheckingEnabled(true);
+        client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(DEFAULT_CONNECT_TIMEOUT);
+        lastIdleCheck = System.currentTimeMillis();
+    }
+
+    public <T> T post(String url, String contentType, byte[] body, ResponseHandler<T> handler) throws IOException {
+        return post(url, new ByteArrayRequestEntity(body, contentType), handler);
+    }
+
+    public <T> T post(String url, final String contentType, final BodyWriter body, ResponseHandler<T> handler) throws IOException {
+        return post(url, new RequestEntity() {
+            public boolean isRepeatable() {
+                return true;
+            }
+
+            public void writeRequest(OutputStream out) throws IOException {
+                body.writeTo(out);
+            }
+
+            public long getContentLength() {
+                return body.getContentLength();
+            }
+
+            public String getContentType() {
+                return contentType;
+            }
+        }, handler);
+    }
+
+    private <T> T post(String url, RequestEntity entity, ResponseHandler<T> handler) throws IOException {
+        closeIdleConnectionsIfNeeded();
+        PostMethod post = new PostMethod(url);
+        InputStream in = null;
+        try {
+            post.setRequestEntity(entity);
+            int status = client.executeMethod(post);
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new IOException("Response error " + status);
+            }
+            in = post.getResponseBodyAsStream();
+            return handler.handle(in);
+        } finally {
+            IOHelper.closeQuietly(in);
+            post.releaseConnection();
+        }
+    }
+
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Closes pooled connections idle for longer than the idle timeout
+     */
+    public void closeIdleConnections() {
+        lastIdleCheck = System.currentTimeMillis();
+        connectionManager.closeIdleConnections(idleTimeout);
+    }
+
+    private void closeIdleConnectionsIfNeeded() {
+        if (System.currentTimeMillis() - lastIdleCheck > idleTimeout) {
+            log.debug("Closing connections idle for more than {} ms", idleTimeout);
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * @return connect timeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return connectionManager.getParams().getConnectionTimeout();
+    }
+
+    /**
+     * Sets connect timeout, also used as the maximum wait for a free pooled connection
+     * @param connectTimeout connect timeout in milliseconds, 0 means no timeout
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        connectionManager.getParams().setConnectionTimeout(connectTimeout);
+        client.getParams().setConnectionManagerTimeout(connectTimeout);
+    }
+
+    /**
+     * @return read timeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return connectionManager.getParams().getSoTimeout();
+    }
+
+    /**
+     * @param readTimeout read timeout in milliseconds, 0 means no timeout
+     */
+    public void setReadTimeout(int readTimeout) {
+        connectionManager.getParams().setSoTimeout(readTimeout);
+    }
+
+    /**
+     * @return maximum pooled connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+    }
+
+    /**
+     * @param maxConnectionsPerHost maximum pooled connections per host
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    }
+
+    /**
+     * @return maximum pooled connections for all hosts
+     */
+    public int getMaxTotalConnections() {
+        return connectionManager.getParams().getMaxTotalConnections();
+    }
+
+    /**
+     * @param maxTotalConnections maximum pooled connections for all hosts
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        connectionManager.getParams().setMaxTotalConnections(maxTotalConnections);
+    }
+
+    /**
+     * @return idle timeout in milliseconds
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout time in milliseconds after which an idle pooled connection is closed
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * HTTP transport used by <code>SafeCreativeAPI</code> to send api requests
+ */
+public interface Transport {
+
+    /**
+     * Response body handler. The response stream is only valid while the handler runs.
+     * Api error responses found while handling are thrown as an <code>IOException</code>
+     * caused by the <code>ApiException</code>.
+     *
+     * @param <T> handler result type
+     */
+    public interface ResponseHandler<T> {
+        public T handle(InputStream in) throws IOException;
+    }
+
+    /**
+     * Request body written straight into the request stream
+     */
+    public interface BodyWriter {
+        /**
+         * @return exact body length in bytes
+         */
+        public long getContentLength();
+
+        /**
+         * Writes the body, may be called again if the request is retried
+         */
+        public void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Posts a request body to an url
+     *
+     * @param url request url
+     * @param contentType request body content type
+     * @param body request body
+     * @param handler response body handler
+     * @return handler result
+     * @throws IOException on connection errors or non successful http status
+     */
+    public <T> T post(String url, String contentType, byte[] body, ResponseHandler<T> handler) throws IOException;
+
+    /**
+     * Posts a streamed request body to an url. By default the body is buffered and
+     * posted as a byte array, transports able to stream it should override this method.
+     *
+     * @param url request url
+     * @param contentType request body content type
+     * @param body request body writer
+     * @param handler response body handler
+     * @return handler result
+     * @throws IOException on connection errors or non successful http status
+     */
+    public default <T> T post(String url, String contentType, BodyWriter body, ResponseHandler<T> handler) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, body.getContentLength()));
+        body.writeTo(out);
+        return post(url, contentType, out.toByteArray(), handler);
+    }
+
+    /**
+     * Releases any resource held by this transport
+     */
+    public void shutdown();
+}
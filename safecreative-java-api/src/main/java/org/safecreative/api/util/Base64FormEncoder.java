@@ -0,0 +1,108 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming Base64 encoder for binary request parameters.
+ * Writes the same layout as <code>Base64.encodeBytes</code> (lines broken at 76 characters)
+ * straight from the source buffer to an output stream, optionally
+ * <code>application/x-www-form-urlencoded</code> escaped, without building intermediate strings.
+ */
+public final class Base64FormEncoder {
+
+    private final static byte[] ALPHABET = {
+        'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+        'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+        'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+        'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
+    };
+    private final static byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+    private final static int MAX_LINE_LENGTH = 76;
+    private final static int BUFFER_SIZE = 4 * 1024;
+
+    private Base64FormEncoder() {
+    }
+
+    /**
+     * Writes Base64 encoded data
+     * @param data source buffer
+     * @param off source offset
+     * @param len source length
+     * @param formEncode if <code>true</code> escapes '+', '/', '=' and line breaks as form url encoding does
+     * @param out output stream
+     * @return number of bytes written
+     * @throws IOException
+     */
+    public static long encode(byte[] data, int off, int len, boolean formEncode, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int pos = 0;
+        long written = 0;
+        int lineLength = 0;
+        int end = off + len;
+        byte[] quad = new byte[4];
+        for (int i = off; i < end; i += 3) {
+            int remaining = end - i;
+            int b0 = data[i] & 0xff;
+            int b1 = remaining > 1 ? data[i + 1] & 0xff : 0;
+            int b2 = remaining > 2 ? data[i + 2] & 0xff : 0;
+            quad[0] = ALPHABET[b0 >>> 2];
+            quad[1] = ALPHABET[((b0 << 4) | (b1 >>> 4)) & 0x3f];
+            quad[2] = remaining > 1 ? ALPHABET[((b1 << 2) | (b2 >>> 6)) & 0x3f] : (byte) '=';
+            quad[3] = remaining > 2 ? ALPHABET[b2 & 0x3f] : (byte) '=';
+            if (pos > BUFFER_SIZE - 16) {
+                out.write(buffer, 0, pos);
+                written += pos;
+                pos = 0;
+            }
+            for (int q = 0; q < 4; q++) {
+                pos = put(buffer, pos, quad[q], formEncode);
+            }
+            lineLength += 4;
+            if (remaining > 2 && lineLength == MAX_LINE_LENGTH) {
+                pos = put(buffer, pos, (byte) '\n', formEncode);
+                lineLength = 0;
+            }
+        }
+        out.write(buffer, 0, pos);
+        return written + pos;
+    }
+
+    private static int put(byte[] buffer, int pos, byte b, boolean formEncode) {
+        if (formEncode && (b == '+' || b == '/' || b == '=' || b == '\n')) {
+            buffer[pos++] = '%';
+            buffer[pos++] = HEX[(b >>> 4) & 0x0f];
+            buffer[pos++] = HEX[b & 0x0f];
+        } else {
+            buffer[pos++] = b;
+        }
+        return pos;
+    }
+}
@@ -29,30 +29,83 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Digest {
 
     public static final String SHA1 = "SHA-1";
     public static final String MD5 = "MD5";
+    /**
+     * Files at least this size are digested through memory mapped regions
+     */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+    /**
+     * Size of the memory mapped regions digested at once
+     */
+    public static final int MAP_REGION_SIZE = 64 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Map<String, MessageDigest>> digests = new ThreadLocal<Map<String, MessageDigest>>() {
+        @Override
+        protected Map<String, MessageDigest> initialValue() {
+            return new HashMap<String, MessageDigest>();
+        }
+    };
 
+    /**
+     * Lowercase hex string of data
+     * @param data
+     * @return hex string or <code>null</code> if data is <code>null</code>
+     */
     public static String toHex(byte[] data) {
-        StringBuilder buf = new StringBuilder();
+        if (data == null) {
+            return null;
+        }
+        char[] hex = new char[data.length * 2];
+        for (int i = 0, j = 0; i < data.length; i++) {
+            hex[j++] = HEX_DIGITS[(data[i] >>> 4) & 0x0F];
+            hex[j++] = HEX_DIGITS[data[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Appends the lowercase hex string of data
+     * @param out
+     * @param data
+     * @return out
+     */
+    public static StringBuilder appendHex(StringBuilder out, byte[] data) {
         for (int i = 0; i < data.length; i++) {
-            int halfbyte = (data[i] >>> 4) & 0x0F;
-            int two_halfs = 0;
-            do {
-                if ((0 <= halfbyte) && (halfbyte <= 9)) {
-                    buf.append((char) ('0' + halfbyte));
-                } else {
-                    buf.append((char) ('a' + (halfbyte - 10)));
-                }
-                halfbyte = data[i] & 0x0F;
-            } while (two_halfs++ < 1);
+            out.append(HEX_DIGITS[(data[i] >>> 4) & 0x0F]).append(HEX_DIGITS[data[i] & 0x0F]);
         }
-        return buf.toString();
+        return out;
+    }
 
+    /**
+     * Get a reset digest instance cached for the calling thread,
+     * it is shared by the thread so it must not be kept across calls to this class
+     * @param digestAlgorithm
+     * @return message digest
+     * @throws NoSuchAlgorithmException
+     */
+    public static MessageDigest getMessageDigest(String digestAlgorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> cache = digests.get();
+        MessageDigest digest = cache.get(digestAlgorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(digestAlgorithm);
+            cache.put(digestAlgorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
     }
 
     /**
@@ -87,18 +140,69 @@ public class Digest {
      * @return hex string or <code>null</code> if something went wrong
      */
     public static byte[] getBytesDigest(byte[] input, String digestAlgorithm) {
-        byte[] result = null;
         try {
-            MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
-            result = digest.digest(input);
+            return getMessageDigest(digestAlgorithm).digest(input);
         } catch (Exception ex) {
             return null;
         }
-        return result;
     }
 
+    /**
+     * Get bytes of computed digest from file, large files are read through memory mapped regions
+     * @param file
+     * @param digestAlgorithm
+     * @return digest bytes
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
     public static byte[] getBytesDigest(File file, String digestAlgorithm) throws NoSuchAlgorithmException, IOException {
-        return getBytesDigest(new FileInputStream(file), digestAlgorithm);
+        MessageDigest digest = getMessageDigest(digestAlgorithm);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            update(digest, input.getChannel());
+            return digest.digest();
+        } finally {
+            IOHelper.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Updates a digest with the channel content from its current position to its end.
+     * Channels with at least <code>MAP_THRESHOLD</code> bytes left are read through memory mapped regions,
+     * falling back to plain reads if mapping fails
+     * @param digest
+     * @param channel
+     * @throws IOException
+     */
+    public static void update(MessageDigest digest, FileChannel channel) throws IOException {
+        update(digest, channel, MAP_REGION_SIZE);
+    }
+
+    static void update(MessageDigest digest, FileChannel channel, int regionSize) throws IOException {
+        long position = channel.position();
+        long size = channel.size();
+        if (size - position >= MAP_THRESHOLD) {
+            try {
+                while (position < size) {
+                    long length = Math.min(regionSize, size - position);
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    digest.update(region);
+                    position += length;
+                }
+                channel.position(position);
+                return;
+            } catch (IOException ex) {
+                // Address space exhausted or mapping unsupported, read the rest
+                channel.position(position);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] array = buffer.array();
+        int readed;
+        while ((readed = channel.read(buffer)) >= 0) {
+            digest.update(array, 0, readed);
+            ((Buffer) buffer).clear();
+        }
     }
 
     public static byte[] getBytesDigest(InputStream input, String digestAlgorithm) throws NoSuchAlgorithmException, IOException {
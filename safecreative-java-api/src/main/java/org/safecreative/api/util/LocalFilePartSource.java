@@ -0,0 +1,53 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import org.apache.commons.httpclient.methods.multipart.FilePartSource;
+
+/**
+ * File part source keeping its file, so its modification time can be checked
+ * before resuming an upload of it
+ */
+public class LocalFilePartSource extends FilePartSource {
+
+    private final File file;
+
+    public LocalFilePartSource(File file) throws FileNotFoundException {
+        super(file);
+        this.file = file;
+    }
+
+    public LocalFilePartSource(String fileName, File file) throws FileNotFoundException {
+        super(fileName, file);
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
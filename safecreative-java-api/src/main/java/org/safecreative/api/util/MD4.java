@@ -0,0 +1,152 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.util;
+
+import java.security.MessageDigest;
+
+/**
+ * MD4 message digest (RFC 1320), not provided by the standard JCA providers.
+ * Needed for MD4 content hashes and ed2k file ids.
+ */
+public class MD4 extends MessageDigest {
+
+    public static final String ALGORITHM = "MD4";
+    private static final int BLOCK_SIZE = 64;
+    private static final int[] S1 = {3, 7, 11, 19};
+    private static final int[] S2 = {3, 5, 9, 13};
+    private static final int[] S3 = {3, 9, 11, 15};
+    private static final int[] K2 = {0, 4, 8, 12, 1, 5, 9, 13, 2, 6, 10, 14, 3, 7, 11, 15};
+    private static final int[] K3 = {0, 8, 4, 12, 2, 10, 6, 14, 1, 9, 5, 13, 3, 11, 7, 15};
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final int[] x = new int[16];
+    private int a, b, c, d;
+    private long count;
+
+    public MD4() {
+        super(ALGORITHM);
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 16;
+    }
+
+    @Override
+    protected void engineReset() {
+        a = 0x67452301;
+        b = 0xefcdab89;
+        c = 0x98badcfe;
+        d = 0x10325476;
+        count = 0;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        buffer[(int) (count & (BLOCK_SIZE - 1))] = input;
+        count++;
+        if ((count & (BLOCK_SIZE - 1)) == 0) {
+            transform(buffer, 0);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        int index = (int) (count & (BLOCK_SIZE - 1));
+        count += len;
+        if (index > 0) {
+            int n = Math.min(BLOCK_SIZE - index, len);
+            System.arraycopy(input, offset, buffer, index, n);
+            offset += n;
+            len -= n;
+            if (index + n < BLOCK_SIZE) {
+                return;
+            }
+            transform(buffer, 0);
+        }
+        while (len >= BLOCK_SIZE) {
+            transform(input, offset);
+            offset += BLOCK_SIZE;
+            len -= BLOCK_SIZE;
+        }
+        if (len > 0) {
+            System.arraycopy(input, offset, buffer, 0, len);
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long bits = count << 3;
+        int index = (int) (count & (BLOCK_SIZE - 1));
+        int padding = index < 56 ? 56 - index : 120 - index;
+        byte[] tail = new byte[padding + 8];
+        tail[0] = (byte) 0x80;
+        for (int i = 0; i < 8; i++) {
+            tail[padding + i] = (byte) (bits >>> (8 * i));
+        }
+        engineUpdate(tail, 0, tail.length);
+        byte[] result = new byte[16];
+        int[] state = {a, b, c, d};
+        for (int i = 0; i < 16; i++) {
+            result[i] = (byte) (state[i >> 2] >>> (8 * (i & 3)));
+        }
+        engineReset();
+        return result;
+    }
+
+    private void transform(byte[] block, int offset) {
+        for (int i = 0; i < 16; i++, offset += 4) {
+            x[i] = (block[offset] & 0xff) | (block[offset + 1] & 0xff) << 8
+                    | (block[offset + 2] & 0xff) << 16 | (block[offset + 3] & 0xff) << 24;
+        }
+        int aa = a, bb = b, cc = c, dd = d;
+        // Each step updates the first register, the registers then rotate (a,b,c,d) -> (d,a',b,c)
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(aa + ((bb & cc) | (~bb & dd)) + x[i], S1[i & 3]);
+            aa = dd;
+            dd = cc;
+            cc = bb;
+            bb = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(aa + ((bb & cc) | (bb & dd) | (cc & dd)) + x[K2[i]] + 0x5a827999, S2[i & 3]);
+            aa = dd;
+            dd = cc;
+            cc = bb;
+            bb = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int t = Integer.rotateLeft(aa + (bb ^ cc ^ dd) + x[K3[i]] + 0x6ed9eba1, S3[i & 3]);
+            aa = dd;
+            dd = cc;
+            cc = bb;
+            bb = t;
+        }
+        a += aa;
+        b += bb;
+        c += cc;
+        d += dd;
+    }
+}
@@ -0,0 +1,523 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.File;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+import org.safecreative.api.SafeCreativeAPI.AuthkeyLevel;
+import org.safecreative.api.UploadProgressListener;
+import org.safecreative.api.transport.HttpClientTransport;
+import org.safecreative.api.transport.Transport;
+import org.safecreative.api.wrapper.model.AuthKey;
+import org.safecreative.api.wrapper.model.AuthKeyState;
+import org.safecreative.api.wrapper.model.Country;
+import org.safecreative.api.wrapper.model.DownloadInfo;
+import org.safecreative.api.wrapper.model.License;
+import org.safecreative.api.wrapper.model.LicenseFeatureObject;
+import org.safecreative.api.wrapper.model.Link;
+import org.safecreative.api.wrapper.model.Profile;
+import org.safecreative.api.wrapper.model.User;
+import org.safecreative.api.wrapper.model.UserLink;
+import org.safecreative.api.wrapper.model.UserQuota;
+import org.safecreative.api.wrapper.model.Work;
+
+/**
+ * Asynchronous facade of <code>SafeCreativeAPIWrapper</code>.
+ * Every operation runs on the configured executor and returns a <code>CompletableFuture</code>
+ * completed with the wrapper result or exceptionally with the wrapper exception.
+ * When no executor is given a fixed pool of daemon threads is used, sized to the connections per host
+ * of the api transport: the blocking http client can not serve more calls at once, calls beyond it
+ * wait in the pool queue rather than time out waiting for a pooled connection.
+ * A given executor should be bounded the same way.
+ */
+public class AsyncSafeCreativeAPIWrapper {
+
+    private final SafeCreativeAPIWrapper wrapper;
+    private final Executor executor;
+    private final boolean ownExecutor;
+
+    /**
+     * Constructor using the default executor
+     *
+     * @param wrapper synchronous wrapper to delegate to
+     */
+    public AsyncSafeCreativeAPIWrapper(SafeCreativeAPIWrapper wrapper) {
+        this(wrapper, createDefaultExecutor(getMaxConcurrentCalls(wrapper)), true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wrapper synchronous wrapper to delegate to
+     * @param executor executor running the wrapper calls
+     */
+    public AsyncSafeCreativeAPIWrapper(SafeCreativeAPIWrapper wrapper, Executor executor) {
+        this(wrapper, executor, false);
+    }
+
+    private AsyncSafeCreativeAPIWrapper(SafeCreativeAPIWrapper wrapper, Executor executor, boolean ownExecutor) {
+        if (wrapper == null) {
+            throw new IllegalArgumentException("null wrapper");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("null executor");
+        }
+        this.wrapper = wrapper;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * @return the synchronous wrapper
+     */
+    public SafeCreativeAPIWrapper getWrapper() {
+        return wrapper;
+    }
+
+    /**
+     * @return the executor running the wrapper calls
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shuts down the default executor. Executors given by the caller are left untouched.
+     */
+    public void shutdown() {
+        if (ownExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    /**
+     * @param wrapper synchronous wrapper
+     * @return maximum connections per host of the wrapper api transport,
+     * <code>HttpClientTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST</code> for other transports
+     */
+    public static int getMaxConcurrentCalls(SafeCreativeAPIWrapper wrapper) {
+        if (wrapper == null) {
+            throw new IllegalArgumentException("null wrapper");
+        }
+        Transport transport = wrapper.getApi().getTransport();
+        if (transport instanceof HttpClientTransport) {
+            return ((HttpClientTransport) transport).getMaxConnectionsPerHost();
+        }
+        return HttpClientTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads
+     *
+     * @param threads maximum calls running at once
+     * @return a new executor service
+     */
+    public static ExecutorService createDefaultExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "safecreative-api-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs a call on the executor
+     *
+     * @param call call to run
+     * @return future of call result
+     */
+    public <T> CompletableFuture<T> submit(final Callable<T> call) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Authorization methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#checkAuth(AuthKey) */
+    public CompletableFuture<AuthKeyState> checkAuth(AuthKey authKey) {
+        return submit(() -> wrapper.checkAuth(authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#checkAuth(String) */
+    public CompletableFuture<AuthKeyState> checkAuth(String authKey) {
+        return submit(() -> wrapper.checkAuth(authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#createAuth() */
+    public CompletableFuture<AuthKey> createAuth() {
+        return submit(() -> wrapper.createAuth());
+    }
+
+    /** @see SafeCreativeAPIWrapper#createAuth(AuthkeyLevel) */
+    public CompletableFuture<AuthKey> createAuth(AuthkeyLevel authkeyLevel) {
+        return submit(() -> wrapper.createAuth(authkeyLevel));
+    }
+
+    /** @see SafeCreativeAPIWrapper#createAuth(AuthkeyLevel, boolean) */
+    public CompletableFuture<AuthKey> createAuth(AuthkeyLevel authkeyLevel, boolean embeddable) {
+        return submit(() -> wrapper.createAuth(authkeyLevel, embeddable));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // User methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#getUser(String) */
+    public CompletableFuture<User> getUser(String code) {
+        return submit(() -> wrapper.getUser(code));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getUserQuota() */
+    public CompletableFuture<UserQuota> getUserQuota() {
+        return submit(() -> wrapper.getUserQuota());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getUserQuota(AuthKey) */
+    public CompletableFuture<UserQuota> getUserQuota(AuthKey authKey) {
+        return submit(() -> wrapper.getUserQuota(authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#userLink(String, AuthkeyLevel, String, String, String) */
+    public CompletableFuture<UserLink> userLink(String mail, AuthkeyLevel level,
+            String firstName, String middleName, String lastName) {
+        return submit(() -> wrapper.userLink(mail, level, firstName, middleName, lastName));
+    }
+
+    /** @see SafeCreativeAPIWrapper#userLink(String, AuthkeyLevel, String, String, String, String, String, String, String, String) */
+    public CompletableFuture<UserLink> userLink(String mail, AuthkeyLevel level,
+            String firstName, String middleName, String lastName,
+            String addressline1, String addressline2,
+            String addresszip, String addresscity, String addresscountry) {
+        return submit(() -> wrapper.userLink(mail, level, firstName, middleName, lastName,
+                addressline1, addressline2, addresszip, addresscity, addresscountry));
+    }
+
+    /** @see SafeCreativeAPIWrapper#userModify(String, String, String, String, String, String, String, String, String) */
+    public CompletableFuture<Boolean> userModify(String mail,
+            String firstName, String middleName, String lastName,
+            String addressline1, String addressline2,
+            String addresszip, String addresscity, String addresscountry) {
+        return submit(() -> wrapper.userModify(mail, firstName, middleName, lastName,
+                addressline1, addressline2, addresszip, addresscity, addresscountry));
+    }
+
+    /** @see SafeCreativeAPIWrapper#userUnLink(String) */
+    public CompletableFuture<Boolean> userUnLink(String userCode) {
+        return submit(() -> wrapper.userUnLink(userCode));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Information methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#getVersion() */
+    public CompletableFuture<String> getVersion() {
+        return submit(() -> wrapper.getVersion());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getProfiles() */
+    public CompletableFuture<List<Profile>> getProfiles() {
+        return submit(() -> wrapper.getProfiles());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getProfiles(AuthKey) */
+    public CompletableFuture<List<Profile>> getProfiles(AuthKey authKey) {
+        return submit(() -> wrapper.getProfiles(authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getLicenses() */
+    public CompletableFuture<ListPage<License>> getLicenses() {
+        return submit(() -> wrapper.getLicenses());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getLicenses(int) */
+    public CompletableFuture<ListPage<License>> getLicenses(int page) {
+        return submit(() -> wrapper.getLicenses(page));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getLicenses(int, AuthKey) */
+    public CompletableFuture<ListPage<License>> getLicenses(int page, AuthKey authKey) {
+        return submit(() -> wrapper.getLicenses(page, authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getLicenseFeatures() */
+    public CompletableFuture<EnumMap<License.Feature, LicenseFeatureObject>> getLicenseFeatures() {
+        return submit(() -> wrapper.getLicenseFeatures());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkTypes() */
+    public CompletableFuture<List<Work.Type>> getWorkTypes() {
+        return submit(() -> wrapper.getWorkTypes());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkTypesTree() */
+    public CompletableFuture<List<Work.TypeGroup>> getWorkTypesTree() {
+        return submit(() -> wrapper.getWorkTypesTree());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkLanguages() */
+    public CompletableFuture<List<Work.Language>> getWorkLanguages() {
+        return submit(() -> wrapper.getWorkLanguages());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getCountries() */
+    public CompletableFuture<List<Country>> getCountries() {
+        return submit(() -> wrapper.getCountries());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Work methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#getWork(String) */
+    public CompletableFuture<Work> getWork(String code) {
+        return submit(() -> wrapper.getWork(code));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkPrivate(String) */
+    public CompletableFuture<Work> getWorkPrivate(String code) {
+        return submit(() -> wrapper.getWorkPrivate(code));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkPrivate(String, AuthKey) */
+    public CompletableFuture<Work> getWorkPrivate(String code, AuthKey authKey) {
+        return submit(() -> wrapper.getWorkPrivate(code, authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkList() */
+    public CompletableFuture<ListPage<Work>> getWorkList() {
+        return submit(() -> wrapper.getWorkList());
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkList(int) */
+    public CompletableFuture<ListPage<Work>> getWorkList(int page) {
+        return submit(() -> wrapper.getWorkList(page));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkList(int, AuthKey) */
+    public CompletableFuture<ListPage<Work>> getWorkList(int page, AuthKey authKey) {
+        return submit(() -> wrapper.getWorkList(page, authKey));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workDelete(String) */
+    public CompletableFuture<Boolean> workDelete(String code) {
+        return submit(() -> wrapper.workDelete(code));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkDownload(String, boolean) */
+    public CompletableFuture<DownloadInfo> getWorkDownload(String code, boolean owner) {
+        return submit(() -> wrapper.getWorkDownload(code, owner));
+    }
+
+    /** @see SafeCreativeAPIWrapper#getWorkDownload(String, boolean, boolean) */
+    public CompletableFuture<DownloadInfo> getWorkDownload(String code, boolean owner, boolean isAttachment) {
+        return submit(() -> wrapper.getWorkDownload(code, owner, isAttachment));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Registration methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#workRegister(String, String, Profile, List, Link...) */
+    public CompletableFuture<String> workRegister(String title, String content, Profile profile, List<String> tags, Link... links) {
+        return submit(() -> wrapper.workRegister(title, content, profile, tags, links));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(String, File, Profile, UploadProgressListener) */
+    public CompletableFuture<String> workRegister(String title, File file, Profile profile, UploadProgressListener uploadProgressListener) {
+        return submit(() -> wrapper.workRegister(title, file, profile, uploadProgressListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(File, Profile, Work, UploadProgressListener) */
+    public CompletableFuture<String> workRegister(File file, Profile profile, Work work, UploadProgressListener uploadProgressListener) {
+        return submit(() -> wrapper.workRegister(file, profile, work, uploadProgressListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(String, Work, Profile) */
+    public CompletableFuture<String> workRegister(String ticket, Work work, Profile profile) {
+        return submit(() -> wrapper.workRegister(ticket, work, profile));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(String, URL, Profile, long, String) */
+    public CompletableFuture<String> workRegister(String title, URL url, Profile profile, long fileSize, String checkSum) {
+        return submit(() -> wrapper.workRegister(title, url, profile, fileSize, checkSum));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(String, URL, Profile, String, long, String) */
+    public CompletableFuture<String> workRegister(String title, URL url, Profile profile, String fileName, long fileSize, String checkSum) {
+        return submit(() -> wrapper.workRegister(title, url, profile, fileName, fileSize, checkSum));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(URL, Profile, Work, String, long, String) */
+    public CompletableFuture<String> workRegister(URL url, Profile profile, Work work, String fileName, long fileSize, String checkSum) {
+        return submit(() -> wrapper.workRegister(url, profile, work, fileName, fileSize, checkSum));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workRegister(Map, Work, Profile) */
+    public CompletableFuture<String> workRegister(Map<String, String> registerParams, Work work, Profile profile) {
+        return submit(() -> wrapper.workRegister(registerParams, work, profile));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(File, Work, UploadProgressListener) */
+    public CompletableFuture<Boolean> workUpdate(File file, Work work, UploadProgressListener uploadListener) {
+        return submit(() -> wrapper.workUpdate(file, work, uploadListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(File, Work, String, List, UploadProgressListener) */
+    public CompletableFuture<Boolean> workUpdate(File file, Work work, String extraTags, List<Link> extraLinks,
+            UploadProgressListener uploadProgressListener) {
+        return submit(() -> wrapper.workUpdate(file, work, extraTags, extraLinks, uploadProgressListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(String, Work) */
+    public CompletableFuture<Boolean> workUpdate(String ticket, Work work) {
+        return submit(() -> wrapper.workUpdate(ticket, work));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(String, Work, String, List) */
+    public CompletableFuture<Boolean> workUpdate(String ticket, Work work, String extraTags, List<Link> extraLinks) {
+        return submit(() -> wrapper.workUpdate(ticket, work, extraTags, extraLinks));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(URL, String, long, String, Work) */
+    public CompletableFuture<Boolean> workUpdate(URL url, String fileName, long fileSize, String checkSum, Work work) {
+        return submit(() -> wrapper.workUpdate(url, fileName, fileSize, checkSum, work));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(URL, String, long, String, Work, String, List) */
+    public CompletableFuture<Boolean> workUpdate(URL url, String fileName, long fileSize,
+            String checkSum, Work work, String extraTags, List<Link> extraLinks) {
+        return submit(() -> wrapper.workUpdate(url, fileName, fileSize, checkSum, work, extraTags, extraLinks));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(Work) */
+    public CompletableFuture<Boolean> workUpdate(Work work) {
+        return submit(() -> wrapper.workUpdate(work));
+    }
+
+    /** @see SafeCreativeAPIWrapper#workUpdate(Work, String, List) */
+    public CompletableFuture<Boolean> workUpdate(Work work, String extraTags, List<Link> extraLinks) {
+        return submit(() -> wrapper.workUpdate(work, extraTags, extraLinks));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // SEARCH methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByFields(int, Object...) */
+    public CompletableFuture<ListPage<Work>> searchWorksByFields(int page, Object... fieldValues) {
+        return submit(() -> wrapper.searchWorksByFields(page, fieldValues));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByContent(SearchMethod, String) */
+    public CompletableFuture<List<Work>> searchWorksByContent(SearchMethod method, String value) {
+        return submit(() -> wrapper.searchWorksByContent(method, value));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByHashMD5(String) */
+    public CompletableFuture<ListPage<Work>> searchWorksByHashMD5(String md5) {
+        return submit(() -> wrapper.searchWorksByHashMD5(md5));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByHashSHA1(String) */
+    public CompletableFuture<ListPage<Work>> searchWorksByHashSHA1(String sha1) {
+        return submit(() -> wrapper.searchWorksByHashSHA1(sha1));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByHash(int, SearchMethod, String) */
+    public CompletableFuture<ListPage<Work>> searchWorksByHash(int page, SearchMethod method, String value) {
+        return submit(() -> wrapper.searchWorksByHash(page, method, value));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByQuery(String) */
+    public CompletableFuture<ListPage<Work>> searchWorksByQuery(String query) {
+        return submit(() -> wrapper.searchWorksByQuery(query));
+    }
+
+    /** @see SafeCreativeAPIWrapper#searchWorksByQuery(int, String) */
+    public CompletableFuture<ListPage<Work>> searchWorksByQuery(int page, String query) {
+        return submit(() -> wrapper.searchWorksByQuery(page, query));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Upload methods
+    ////////////////////////////////////////////////////////////////////////////
+
+    /** @see SafeCreativeAPIWrapper#uploadFile(File, String, boolean, UploadProgressListener) */
+    public CompletableFuture<String> uploadFile(File file, String fileName, boolean byPost, UploadProgressListener uploadListener) {
+        return submit(() -> wrapper.uploadFile(file, fileName, byPost, uploadListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#uploadBytes(byte[], String) */
+    public CompletableFuture<String> uploadBytes(byte[] data, String fileName) {
+        return submit(() -> wrapper.uploadBytes(data, fileName));
+    }
+
+    /** @see SafeCreativeAPIWrapper#uploadBytes(byte[], String, boolean, UploadProgressListener) */
+    public CompletableFuture<String> uploadBytes(byte[] data, String fileName, boolean byPost, UploadProgressListener uploadListener) {
+        return submit(() -> wrapper.uploadBytes(data, fileName, byPost, uploadListener));
+    }
+
+    /** @see SafeCreativeAPIWrapper#uploadFileSource(PartSource, boolean, UploadProgressListener, String...) */
+    public CompletableFuture<String> uploadFileSource(PartSource fileSource, boolean byPost, UploadProgressListener uploadListener, String... checkSum) {
+        return submit(() -> wrapper.uploadFileSource(fileSource, byPost, uploadListener, checkSum));
+    }
+
+    /** @see SafeCreativeAPIWrapper#uploadTicketStatus(String) */
+    public CompletableFuture<Boolean> uploadTicketStatus(String uploadTicket) {
+        return submit(() -> wrapper.uploadTicketStatus(uploadTicket));
+    }
+}
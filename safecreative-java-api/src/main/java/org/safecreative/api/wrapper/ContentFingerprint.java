@@ -0,0 +1,365 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import org.safecreative.api.util.BufferProcessor;
+import org.safecreative.api.util.Digest;
+import org.safecreative.api.util.IOHelper;
+import org.safecreative.api.util.MD4;
+
+/**
+ * Content fingerprints accepted by <code>searchWorksByContent</code> (the <code>WORK_CNT_*</code>
+ * search methods), computed in a single read of the content.<br/>
+ * This is a buffer processor fanning every buffer out to one processor per requested method,
+ * so it can be fed from any read loop (as <code>IOHelper.copy</code>) or used through
+ * {@link #compute(File, SearchMethod...)}.
+ * Ed2k file ids hash 9728000 byte chunks with MD4, a content of exactly one chunk or less
+ * is its own MD4 and no empty chunk hash is appended to contents of an exact multiple of the chunk size.
+ * Torrent fingerprints are the SHA-1 of the concatenated SHA-1 piece hashes.
+ * Piece based fingerprints of large files are hashed in parallel, see {@link ParallelPieceHasher}.
+ */
+public class ContentFingerprint implements BufferProcessor {
+
+    public static final int PART_SIZE = 32 * 1024;
+    public static final int ED2K_CHUNK_SIZE = 9728000;
+    /**
+     * Files at least this size get their piece based fingerprints hashed in parallel
+     */
+    public static final long PARALLEL_THRESHOLD = 32 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private final long size;
+    private final Map<SearchMethod, Fingerprinter> fingerprinters;
+    private long position;
+    private Map<SearchMethod, String> values;
+
+    /**
+     * Constructor
+     * @param size content size, needed by <code>WORK_CNT_MIDDLE</code> and <code>WORK_CNT_END</code>,
+     * -1 if unknown
+     * @param methods <code>WORK_CNT_*</code> search methods to compute
+     */
+    public ContentFingerprint(long size, Collection<SearchMethod> methods) {
+        this.size = size;
+        fingerprinters = new EnumMap<SearchMethod, Fingerprinter>(SearchMethod.class);
+        for (SearchMethod method : methods) {
+            fingerprinters.put(method, createFingerprinter(method, size));
+        }
+    }
+
+    /**
+     * Computes fingerprints of a file in a single read.
+     * Piece based fingerprints of files of at least <code>PARALLEL_THRESHOLD</code> bytes are hashed
+     * in parallel by a {@link ParallelPieceHasher} on the common pool while the file is read
+     * for the rest.
+     * @param file
+     * @param methods <code>WORK_CNT_*</code> search methods to compute
+     * @return fingerprint values by method
+     * @throws IOException
+     */
+    public static Map<SearchMethod, String> compute(File file, SearchMethod... methods) throws IOException {
+        long size = file.length();
+        if (size < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            return compute(new FileInputStream(file), size, methods);
+        }
+        final List<SearchMethod> pieceMethods = new ArrayList<SearchMethod>();
+        List<SearchMethod> otherMethods = new ArrayList<SearchMethod>();
+        for (SearchMethod method : methods) {
+            (ParallelPieceHasher.isPieceMethod(method) ? pieceMethods : otherMethods).add(method);
+        }
+        if (pieceMethods.isEmpty()) {
+            return compute(new FileInputStream(file), size, methods);
+        }
+        final ParallelPieceHasher hasher = new ParallelPieceHasher();
+        ForkJoinTask<Map<SearchMethod, String>> pieces = hasher.getPool().submit(() -> hasher.compute(file, pieceMethods));
+        Map<SearchMethod, String> result = new EnumMap<SearchMethod, String>(SearchMethod.class);
+        try {
+            if (!otherMethods.isEmpty()) {
+                result.putAll(compute(new FileInputStream(file), size,
+                        otherMethods.toArray(new SearchMethod[otherMethods.size()])));
+            }
+            result.putAll(pieces.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("fingerprint interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pieces.cancel(false);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Computes fingerprints of a stream in a single read, the stream is closed
+     * @param input
+     * @param size content size, -1 if unknown
+     * @param methods <code>WORK_CNT_*</code> search methods to compute
+     * @return fingerprint values by method
+     * @throws IOException
+     */
+    public static Map<SearchMethod, String> compute(InputStream input, long size, SearchMethod... methods) throws IOException {
+        ContentFingerprint fingerprint = new ContentFingerprint(size, Arrays.asList(methods));
+        IOHelper.copy(input, null, true, READ_BUFFER_SIZE, fingerprint);
+        return fingerprint.getValues();
+    }
+
+    /**
+     * @param method search method
+     * @return <code>true</code> if the method is a content fingerprint
+     */
+    public static boolean isContentMethod(SearchMethod method) {
+        return method.name().startsWith("WORK_CNT_");
+    }
+
+    /**
+     * @return content size given at construction, -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void update(byte[] input, int offset, int len) {
+        if (values != null) {
+            throw new IllegalStateException("fingerprint already computed");
+        }
+        for (Fingerprinter fingerprinter : fingerprinters.values()) {
+            fingerprinter.update(input, offset, len);
+        }
+        position += len;
+    }
+
+    /**
+     * Completes the fingerprints, no more content can be processed afterwards
+     * @return fingerprint values by method
+     */
+    public Map<SearchMethod, String> getValues() {
+        if (values == null) {
+            if (size >= 0 && position != size) {
+                throw new IllegalStateException("processed " + position + " bytes of " + size);
+            }
+            Map<SearchMethod, String> result = new EnumMap<SearchMethod, String>(SearchMethod.class);
+            for (Map.Entry<SearchMethod, Fingerprinter> entry : fingerprinters.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().getValue());
+            }
+            values = Collections.unmodifiableMap(result);
+        }
+        return values;
+    }
+
+    private static Fingerprinter createFingerprinter(SearchMethod method, long size) {
+        switch (method) {
+            case WORK_CNT_ADLER32:
+                return new ChecksumFingerprinter(new Adler32());
+            case WORK_CNT_CRC32:
+                return new ChecksumFingerprinter(new CRC32());
+            case WORK_CNT_ED2K:
+                return new PieceFingerprinter(ED2K_CHUNK_SIZE, new MD4(), new MD4(), true);
+            case WORK_CNT_BEGIN:
+                return new RangeFingerprinter(0, PART_SIZE);
+            case WORK_CNT_MIDDLE:
+                checkSize(method, size);
+                return size < PART_SIZE ? new RangeFingerprinter(0, size)
+                        : new RangeFingerprinter((size - PART_SIZE) / 2, (size - PART_SIZE) / 2 + PART_SIZE);
+            case WORK_CNT_END:
+                checkSize(method, size);
+                return new RangeFingerprinter(Math.max(0, size - PART_SIZE), size);
+            case WORK_CNT_MD2:
+                return new DigestFingerprinter(createDigest("MD2"));
+            case WORK_CNT_MD4:
+                return new DigestFingerprinter(new MD4());
+            case WORK_CNT_MD5:
+                return new DigestFingerprinter(createDigest(Digest.MD5));
+            case WORK_CNT_SHA1:
+                return new DigestFingerprinter(createDigest(Digest.SHA1));
+            case WORK_CNT_SHA384:
+                return new DigestFingerprinter(createDigest("SHA-384"));
+            case WORK_CNT_SHA512:
+                return new DigestFingerprinter(createDigest("SHA-512"));
+            default:
+                if (method.name().startsWith("WORK_CNT_TORRENT_")) {
+                    return new PieceFingerprinter(Integer.parseInt(method.getFieldName().substring("torrent.".length())),
+                            createDigest(Digest.SHA1), createDigest(Digest.SHA1), false);
+                }
+                throw new IllegalArgumentException("Bad content search method " + method);
+        }
+    }
+
+    private static void checkSize(SearchMethod method, long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(method + " needs the content size");
+        }
+    }
+
+    private static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface Fingerprinter extends BufferProcessor {
+
+        String getValue();
+    }
+
+    private static class DigestFingerprinter implements Fingerprinter {
+        private final MessageDigest digest;
+
+        DigestFingerprinter(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        public void update(byte[] input, int offset, int len) {
+            digest.update(input, offset, len);
+        }
+
+        public String getValue() {
+            return Digest.toHex(digest.digest());
+        }
+    }
+
+    private static class ChecksumFingerprinter implements Fingerprinter {
+        private final Checksum checksum;
+
+        ChecksumFingerprinter(Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        public void update(byte[] input, int offset, int len) {
+            checksum.update(input, offset, len);
+        }
+
+        public String getValue() {
+            return String.format("%016x", checksum.getValue());
+        }
+    }
+
+    /**
+     * SHA-1 of the content range [start, end)
+     */
+    private static class RangeFingerprinter implements Fingerprinter {
+        private final MessageDigest digest = createDigest(Digest.SHA1);
+        private final long start;
+        private final long end;
+        private long position;
+
+        RangeFingerprinter(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public void update(byte[] input, int offset, int len) {
+            long from = Math.max(position, start);
+            long to = Math.min(position + len, end);
+            if (from < to) {
+                digest.update(input, offset + (int) (from - position), (int) (to - from));
+            }
+            position += len;
+        }
+
+        public String getValue() {
+            return Digest.toHex(digest.digest());
+        }
+    }
+
+    /**
+     * Hash of the concatenated hashes of fixed size pieces
+     */
+    private static class PieceFingerprinter implements Fingerprinter {
+        private final int pieceSize;
+        private final MessageDigest piece;
+        private final MessageDigest pieces;
+        private final boolean singlePieceHash;
+        private byte[] firstHash;
+        private int pieceCount;
+        private int filled;
+
+        /**
+         * @param singlePieceHash if <code>true</code> a single piece content value is the piece hash
+         */
+        PieceFingerprinter(int pieceSize, MessageDigest piece, MessageDigest pieces, boolean singlePieceHash) {
+            this.pieceSize = pieceSize;
+            this.piece = piece;
+            this.pieces = pieces;
+            this.singlePieceHash = singlePieceHash;
+        }
+
+        public void update(byte[] input, int offset, int len) {
+            while (len > 0) {
+                int n = Math.min(len, pieceSize - filled);
+                piece.update(input, offset, n);
+                offset += n;
+                len -= n;
+                filled += n;
+                if (filled == pieceSize) {
+                    endPiece();
+                }
+            }
+        }
+
+        private void endPiece() {
+            byte[] hash = piece.digest();
+            if (pieceCount++ == 0) {
+                firstHash = hash;
+            }
+            pieces.update(hash);
+            filled = 0;
+        }
+
+        public String getValue() {
+            if (filled > 0 || (singlePieceHash && pieceCount == 0)) {
+                endPiece();
+            }
+            if (singlePieceHash && pieceCount == 1) {
+                return Digest.toHex(firstHash);
+            }
+            return Digest.toHex(pieces.digest());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.safecreative.api.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Iterator over the items of every page of a paginated result.
+ * Pages are fetched on demand, while a page is consumed the next one is
+ * prefetched on the executor so at most two pages are held whatever the
+ * result size.
+ * Api errors are thrown as <code>RuntimeException</code> with the
+ * <code>ApiException</code> as cause.
+ * Instances are not thread safe.
+ *
+ * @param <T> Paginated item class
+ */
+public class PageIterator<T> implements Iterator<T>, AutoCloseable {
+
+    /**
+     * Source of result pages
+     * @param <T> Paginated item class
+     */
+    public interface PageSource<T> {
+
+        /**
+         * @param page page number, starting at 1
+         * @return the page
+         * @throws ApiException
+         */
+        ListPage<T> getPage(int page) throws ApiException;
+    }
+
+    private static Logger log = LoggerFactory.getLogger(PageIterator.class);
+    private final PageSource<T> source;
+    private final Executor executor;
+    private Iterator<T> items;
+    private CompletableFuture<ListPage<T>> nextPage;
+    private int pageNumber;
+    private int pageTotal = -1;
+    private int recordTotal = -1;
+
+    /**
+     * Constructor fetching pages in the calling thread
+     * @param source page source
+     */
+    public PageIterator(PageSource<T> source) {
+        this(source, null);
+    }
+
+    /**
+     * Constructor
+     * @param source page source
+     * @param executor executor prefetching the next page, <code>null</code> to fetch pages in the calling thread
+     */
+    public PageIterator(PageSource<T> source, Executor executor) {
+        if (source == null) {
+            throw new IllegalArgumentException("null source");
+        }
+        this.source = source;
+        this.executor = executor;
+    }
+
+    /**
+     * @return total number of pages, -1 before the first page is fetched
+     */
+    public int getPageTotal() {
+        return pageTotal;
+    }
+
+    /**
+     * @return total number of items, -1 before the first page is fetched
+     */
+    public int getRecordTotal() {
+        return recordTotal;
+    }
+
+    /**
+     * @return number of the page being iterated, 0 before the first page is fetched
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public boolean hasNext() {
+        while (items == null || !items.hasNext()) {
+            if (!nextPage()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return items.next();
+    }
+
+    /**
+     * Stops the iteration discarding any prefetched page
+     */
+    public void close() {
+        if (nextPage != null) {
+            nextPage.cancel(false);
+            nextPage = null;
+        }
+        items = null;
+        pageTotal = pageNumber;
+    }
+
+    /**
+     * @return sequential stream of the remaining items, closing it closes this iterator
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    private boolean nextPage() {
+        items = null;
+        if (pageTotal >= 0 && pageNumber >= pageTotal) {
+            return false;
+        }
+        ListPage<T> page;
+        if (nextPage != null) {
+            page = await(nextPage);
+            nextPage = null;
+        } else {
+            page = fetch(pageNumber + 1);
+        }
+        pageNumber++;
+        if (page == null || page.getSize() == 0) {
+            log.debug("No items at page {}, iteration ends", pageNumber);
+            pageTotal = pageNumber;
+            return false;
+        }
+        pageTotal = page.getPageTotal();
+        recordTotal = page.getRecordTotal();
+        items = page.iterator();
+        if (executor != null && pageNumber < pageTotal) {
+            prefetch(pageNumber + 1);
+        }
+        return true;
+    }
+
+    private void prefetch(final int page) {
+        final CompletableFuture<ListPage<T>> future = new CompletableFuture<ListPage<T>>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(source.getPage(page));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RuntimeException ex) {
+            log.debug("Prefetch of page {} rejected: {}", page, ex.toString());
+            return;
+        }
+        nextPage = future;
+    }
+
+    private ListPage<T> fetch(int page) {
+        try {
+            return source.getPage(page);
+        } catch (ApiException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static <T> ListPage<T> await(CompletableFuture<ListPage<T>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import org.safecreative.api.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads every page of a paginated result.
+ * The first page is fetched in the calling thread to learn the page total,
+ * then the remaining pages are fetched concurrently on the executor with at
+ * most <code>parallelism</code> requests in flight.
+ *
+ * @param <T> Paginated item class
+ */
+public class ParallelPageLoader<T> {
+
+    /**
+     * Receives pages as they arrive, always in the thread calling
+     * {@link ParallelPageLoader#loadAll(PageListener)}
+     * @param <T> Paginated item class
+     */
+    public interface PageListener<T> {
+
+        /**
+         * @param page page number, starting at 1
+         * @param listPage the page
+         */
+        void pageLoaded(int page, ListPage<T> listPage);
+    }
+
+    private static Logger log = LoggerFactory.getLogger(ParallelPageLoader.class);
+    private final PageIterator.PageSource<T> source;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * Constructor
+     * @param source page source
+     * @param executor executor fetching the pages after the first one
+     * @param parallelism maximum number of pages fetched at once
+     */
+    public ParallelPageLoader(PageIterator.PageSource<T> source, Executor executor, int parallelism) {
+        if (source == null) {
+            throw new IllegalArgumentException("null source");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("null executor");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.source = source;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return maximum number of pages fetched at once
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Loads every page into a single list page keeping the page order
+     * @return list page with the items of every page, <code>null</code> if the first page could not be read
+     * @throws ApiException
+     */
+    public ListPage<T> loadAll() throws ApiException {
+        final List<ListPage<T>> pages = new ArrayList<ListPage<T>>();
+        loadAll((page, listPage) -> {
+            while (pages.size() < page) {
+                pages.add(null);
+            }
+            pages.set(page - 1, listPage);
+        });
+        if (pages.isEmpty()) {
+            return null;
+        }
+        ListPage<T> result = new ListPage<T>();
+        result.setRecordTotal(pages.get(0).getRecordTotal());
+        result.setPageTotal(pages.get(0).getPageTotal());
+        for (int i = 0; i < pages.size(); i++) {
+            result.getList().addAll(pages.set(i, null).getList());
+        }
+        return result;
+    }
+
+    /**
+     * Loads every page handing each one to the listener as it arrives,
+     * the first page always comes first, the rest in completion order.
+     * A page after the first one that cannot be read fails the whole load,
+     * and on failure the pages still in flight are cancelled.
+     * @param listener page listener
+     * @return page total, 0 if the first page could not be read
+     * @throws ApiException
+     */
+    public int loadAll(PageListener<T> listener) throws ApiException {
+        ListPage<T> first = source.getPage(1);
+        if (first == null) {
+            return 0;
+        }
+        listener.pageLoaded(1, first);
+        int pageTotal = first.getPageTotal();
+        if (pageTotal <= 1) {
+            return Math.max(pageTotal, 1);
+        }
+        log.debug("Loading {} pages, {} at once", pageTotal, parallelism);
+        CompletionService<ListPage<T>> completion = new ExecutorCompletionService<ListPage<T>>(executor);
+        Map<Future<ListPage<T>>, Integer> pending = new HashMap<Future<ListPage<T>>, Integer>();
+        int nextPage = 2;
+        try {
+            while (nextPage <= pageTotal || !pending.isEmpty()) {
+                while (nextPage <= pageTotal && pending.size() < parallelism) {
+                    final int page = nextPage++;
+                    pending.put(completion.submit(() -> source.getPage(page)), page);
+                }
+                Future<ListPage<T>> done = completion.take();
+                int page = pending.remove(done);
+                ListPage<T> listPage = get(done);
+                if (listPage == null) {
+                    throw new ApiException("Page " + page + " of " + pageTotal + " could not be read");
+                }
+                listener.pageLoaded(page, listPage);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(ex, null, null);
+        } finally {
+            for (Future<ListPage<T>> future : pending.keySet()) {
+                future.cancel(true);
+            }
+        }
+        return pageTotal;
+    }
+
+    private static <T> ListPage<T> get(Future<ListPage<T>> future) throws ApiException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof ApiException) {
+                throw (ApiException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ApiException(cause, null, null);
+        }
+    }
+}
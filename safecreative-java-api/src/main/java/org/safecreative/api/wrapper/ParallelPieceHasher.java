@@ -0,0 +1,224 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.safecreative.api.util.Digest;
+import org.safecreative.api.util.IOHelper;
+import org.safecreative.api.util.MD4;
+
+/**
+ * Fork/join hasher of the piece based content fingerprints (<code>WORK_CNT_ED2K</code> and
+ * <code>WORK_CNT_TORRENT_*</code>).<br/>
+ * The file is split into ranges of whole pieces which are memory mapped and hashed on the pool,
+ * then the piece hashes are combined in order into the same values {@link ContentFingerprint} computes.
+ */
+public class ParallelPieceHasher {
+
+    /**
+     * Maximum bytes hashed by a single task, a piece is never split
+     */
+    public static final int LEAF_SIZE = 16 * 1024 * 1024;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor using the common pool
+     */
+    public ParallelPieceHasher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor
+     * @param pool pool running the hashing tasks
+     */
+    public ParallelPieceHasher(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("null pool");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * @return pool running the hashing tasks
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param method search method
+     * @return <code>true</code> if the method is a piece based content fingerprint
+     */
+    public static boolean isPieceMethod(SearchMethod method) {
+        return method == SearchMethod.WORK_CNT_ED2K || method.name().startsWith("WORK_CNT_TORRENT_");
+    }
+
+    /**
+     * Computes piece based fingerprints of a file
+     * @param file
+     * @param methods <code>WORK_CNT_ED2K</code> or <code>WORK_CNT_TORRENT_*</code> search methods
+     * @return fingerprint values by method
+     * @throws IOException
+     */
+    public Map<SearchMethod, String> compute(File file, Collection<SearchMethod> methods) throws IOException {
+        for (SearchMethod method : methods) {
+            if (!isPieceMethod(method)) {
+                throw new IllegalArgumentException("Bad piece search method " + method);
+            }
+        }
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            final List<PieceTask> tasks = new ArrayList<PieceTask>();
+            for (SearchMethod method : methods) {
+                int pieceSize = getPieceSize(method);
+                byte[][] hashes = new byte[(int) ((size + pieceSize - 1) / pieceSize)][];
+                tasks.add(new PieceTask(method, channel, size, pieceSize, hashes, 0, hashes.length));
+            }
+            try {
+                pool.invoke(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            Map<SearchMethod, String> values = new EnumMap<SearchMethod, String>(SearchMethod.class);
+            for (PieceTask task : tasks) {
+                values.put(task.method, combine(task.method, task.hashes));
+            }
+            return values;
+        } finally {
+            IOHelper.closeQuietly(input);
+        }
+    }
+
+    private static int getPieceSize(SearchMethod method) {
+        if (method == SearchMethod.WORK_CNT_ED2K) {
+            return ContentFingerprint.ED2K_CHUNK_SIZE;
+        }
+        return Integer.parseInt(method.getFieldName().substring("torrent.".length()));
+    }
+
+    private static MessageDigest createDigest(SearchMethod method) {
+        if (method == SearchMethod.WORK_CNT_ED2K) {
+            return new MD4();
+        }
+        try {
+            return MessageDigest.getInstance(Digest.SHA1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Hash of the concatenated piece hashes, a single ed2k piece is its own value
+     */
+    private static String combine(SearchMethod method, byte[][] hashes) {
+        MessageDigest digest = createDigest(method);
+        if (method == SearchMethod.WORK_CNT_ED2K && hashes.length <= 1) {
+            return Digest.toHex(hashes.length == 0 ? digest.digest() : hashes[0]);
+        }
+        for (byte[] hash : hashes) {
+            digest.update(hash);
+        }
+        return Digest.toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the pieces [from, to), splitting ranges over <code>LEAF_SIZE</code>
+     */
+    private static class PieceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final SearchMethod method;
+        private final FileChannel channel;
+        private final long size;
+        private final int pieceSize;
+        private final byte[][] hashes;
+        private final int from;
+        private final int to;
+
+        PieceTask(SearchMethod method, FileChannel channel, long size, int pieceSize, byte[][] hashes, int from, int to) {
+            this.method = method;
+            this.channel = channel;
+            this.size = size;
+            this.pieceSize = pieceSize;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (long) (to - from) * pieceSize > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PieceTask(method, channel, size, pieceSize, hashes, from, middle),
+                        new PieceTask(method, channel, size, pieceSize, hashes, middle, to));
+                return;
+            }
+            if (from >= to) {
+                return;
+            }
+            long start = (long) from * pieceSize;
+            long end = Math.min((long) to * pieceSize, size);
+            MappedByteBuffer region;
+            try {
+                region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            MessageDigest digest = createDigest(method);
+            int length = (int) (end - start);
+            for (int i = from, offset = 0; i < to; i++, offset += pieceSize) {
+                // Buffer casts keep the Java 8 method signatures
+                ((Buffer) region).limit(Math.min(offset + pieceSize, length));
+                ((Buffer) region).position(offset);
+                digest.update(region);
+                hashes[i] = digest.digest();
+            }
+        }
+    }
+}
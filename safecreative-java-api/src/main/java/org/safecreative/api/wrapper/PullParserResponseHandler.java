@@ -0,0 +1,159 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import org.safecreative.api.ApiException;
+import org.safecreative.api.SafeCreativeAPI;
+import org.safecreative.api.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.safecreative.api.util.IOHelper;
+import org.safecreative.api.wrapper.converters.XmlTextPullParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Response handler decoding api responses by hand straight from an xpp3 pull parser.
+ * Parsers are reused per thread, buffered handlers read the whole response into a string first
+ * so decoders may keep slices of it (see {@link XmlTextPullParser}). Error responses are handled as in {@link XStreamResponseHandler},
+ * malformed responses are logged and decoded as <code>null</code>.
+ *
+ * @param <T> decoded type
+ */
+public abstract class PullParserResponseHandler<T> implements Transport.ResponseHandler<T> {
+
+    private static Logger log = LoggerFactory.getLogger(PullParserResponseHandler.class);
+    private static final ThreadLocal<XmlTextPullParser> parsers = new ThreadLocal<XmlTextPullParser>() {
+        @Override
+        protected XmlTextPullParser initialValue() {
+            return new XmlTextPullParser();
+        }
+    };
+    private final boolean buffered;
+
+    public PullParserResponseHandler() {
+        this(false);
+    }
+
+    /**
+     * Constructor
+     * @param buffered <code>true</code> to read responses into a string before decoding
+     */
+    public PullParserResponseHandler(boolean buffered) {
+        this.buffered = buffered;
+    }
+
+    public T handle(InputStream in) throws IOException {
+        if (buffered) {
+            return read(null, IOHelper.readString(in, SafeCreativeAPI.DEFAULT_ENCODING));
+        }
+        return read(new InputStreamReader(in, SafeCreativeAPI.DEFAULT_ENCODING), null);
+    }
+
+    /**
+     * Decodes an already read response
+     * @param response response xml
+     * @return decoded response or <code>null</code> if malformed
+     * @throws ApiException if the response is an error
+     */
+    public T parse(String response) throws ApiException {
+        try {
+            return read(null, response);
+        } catch (IOException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    private T read(Reader in, String text) throws IOException {
+        XmlTextPullParser parser = parsers.get();
+        try {
+            if (text != null) {
+                parser.setInput(text);
+            } else {
+                parser.setInput(in);
+            }
+            parser.nextTag();
+            String root = parser.getName();
+            if ("error".equals(root) || "exception".equals(root)) {
+                throw new IOException(readError(parser));
+            }
+            return decode(parser);
+        } catch (XmlPullParserException e) {
+            log.error("Parsing xml response", e);
+            return null;
+        } catch (RuntimeException e) {
+            log.error("Parsing xml response", e);
+            return null;
+        } finally {
+            try {
+                parser.setInput((Reader) null);
+            } catch (XmlPullParserException e) {
+                log.debug("Releasing parser input", e);
+            }
+        }
+    }
+
+    /**
+     * Decodes a response
+     * @param parser parser positioned at the root element start tag
+     * @return decoded response
+     */
+    protected abstract T decode(XmlPullParser parser) throws XmlPullParserException, IOException;
+
+    private ApiException readError(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String errorCode = null;
+        String errorMessage = null;
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            String node = parser.getName();
+            if ("errorId".equals(node) || "exceptionId".equals(node)) {
+                errorCode = parser.nextText();
+            } else if ("errorMessage".equals(node) || "exceptionMessage".equals(node)) {
+                errorMessage = parser.nextText();
+            } else {
+                skip(parser);
+            }
+        }
+        return new ApiException(errorCode, errorMessage);
+    }
+
+    private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = parser.next();
+            if (event == XmlPullParser.START_TAG) {
+                depth++;
+            } else if (event == XmlPullParser.END_TAG) {
+                depth--;
+            }
+        }
+    }
+}
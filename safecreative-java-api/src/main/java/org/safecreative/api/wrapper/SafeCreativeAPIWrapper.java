@@ -28,28 +28,38 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.URL;
 import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
-import org.apache.commons.httpclient.methods.multipart.FilePartSource;
 import org.apache.commons.httpclient.methods.multipart.PartSource;
 import org.apache.commons.lang.StringUtils;
 import org.safecreative.api.ApiException;
+import org.safecreative.api.ApiResponse;
+import org.safecreative.api.ResponseStatus;
 import org.safecreative.api.RegisterWork;
+import org.safecreative.api.RequestParams;
 import org.safecreative.api.SafeCreativeAPI;
 import org.safecreative.api.SafeCreativeAPI.AuthkeyLevel;
 import org.safecreative.api.UploadProgressListener;
-import org.safecreative.api.util.Digest;
+import org.safecreative.api.UploadSession;
+import org.safecreative.api.transport.HttpClientTransport;
+import org.safecreative.api.transport.Transport;
+import org.safecreative.api.util.LocalFilePartSource;
+import org.safecreative.api.wrapper.converters.AbstractModelConverter;
 import org.safecreative.api.wrapper.converters.DownloadInfoConverter;
 import org.safecreative.api.wrapper.converters.LicenseConverter;
 import org.safecreative.api.wrapper.converters.LicenseFeatureConverter;
 import org.safecreative.api.wrapper.converters.ListPageConverter;
 import org.safecreative.api.wrapper.converters.UserConverter;
 import org.safecreative.api.wrapper.converters.WorkConverter;
+import org.safecreative.api.wrapper.converters.WorkDecoder;
 import org.safecreative.api.wrapper.model.AuthKey;
 import org.safecreative.api.wrapper.model.AuthKeyState;
 import org.safecreative.api.wrapper.model.Country;
@@ -65,6 +75,8 @@ import org.safecreative.api.wrapper.model.Work;
 import org.safecreative.api.wrapper.util.ParamsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * SafeCreativeAPI main wrapper
@@ -79,12 +91,21 @@ public class SafeCreativeAPIWrapper {
     public final static String ARENA_URL = "https://arena.safecreative.org";
 
     private static Logger log = LoggerFactory.getLogger(SafeCreativeAPIWrapper.class);
+    private static final XStreamRegistry xstreamRegistry = new XStreamRegistry();
     private final static String STATE_READY = "ready";
     private final static String ERROR_WORK_NOTFOUND = "WorkNotFound";
     private final static String ERROR_USER_NOTFOUND = "UserNotFound";
     private SafeCreativeAPI api;
     private String baseUrl;
     private String baseSearchUrl;
+    private int uploadWindow = 1;
+    private int chunkSize = RegisterWork.DEFAULT_CHUNK_SIZE;
+    private int maxChunkSize = RegisterWork.MAX_CHUNK_SIZE;
+    private boolean adaptiveChunkSize = false;
+    private File uploadCheckpointFile;
+    private WorkDecoder workDecoder;
+    private Executor pageExecutor;
+    private int pageParallelism = 4;
 
     private AuthKey authKey;
 
@@ -104,6 +125,9 @@ public class SafeCreativeAPIWrapper {
      */
     public SafeCreativeAPIWrapper(SafeCreativeAPI api) {
         this.api = api;
+        if (api.getBaseUrl() == null) {
+            api.setBaseUrl(getBaseUrl());
+        }
     }
 
     /**
@@ -140,6 +164,7 @@ public class SafeCreativeAPIWrapper {
      */
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
+        api.setBaseUrl(getBaseUrl());
     }
 
     /**
@@ -185,6 +210,138 @@ public class SafeCreativeAPIWrapper {
         setAuthKey(new AuthKey(authKey, authPrivateKey));
     }
 
+    /**
+     * @return api upload chunk size
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets api (non post) upload chunk size, used as initial size when adaptive
+     * @param chunkSize chunk size in bytes
+     * @see RegisterWork#setChunkSize(int)
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < RegisterWork.MIN_CHUNK_SIZE || chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("chunk size must be between " + RegisterWork.MIN_CHUNK_SIZE + " and " + maxChunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return api upload chunk size upper bound
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * @param maxChunkSize api upload chunk size upper bound in bytes
+     * @see RegisterWork#setMaxChunkSize(int)
+     */
+    public void setMaxChunkSize(int maxChunkSize) {
+        if (maxChunkSize < RegisterWork.MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("max chunk size must be at least " + RegisterWork.MIN_CHUNK_SIZE);
+        }
+        this.maxChunkSize = maxChunkSize;
+        this.chunkSize = Math.min(chunkSize, maxChunkSize);
+    }
+
+    public boolean isAdaptiveChunkSize() {
+        return adaptiveChunkSize;
+    }
+
+    /**
+     * @param adaptiveChunkSize if <code>true</code> api upload chunk size adapts to the measured chunk throughput
+     * @see RegisterWork#setAdaptiveChunkSize(boolean)
+     */
+    public void setAdaptiveChunkSize(boolean adaptiveChunkSize) {
+        this.adaptiveChunkSize = adaptiveChunkSize;
+    }
+
+    public WorkDecoder getWorkDecoder() {
+        return workDecoder;
+    }
+
+    /**
+     * Sets the pull parser decoder used for work responses (work gets, work lists and searches)
+     * instead of XStream, both decode the same objects. A lazy decoder decodes list page works
+     * on demand, see {@link WorkDecoder#setLazy(boolean)}
+     * @param workDecoder work decoder or <code>null</code> to decode works with XStream
+     */
+    public void setWorkDecoder(WorkDecoder workDecoder) {
+        this.workDecoder = workDecoder;
+    }
+
+    public File getUploadCheckpointFile() {
+        return uploadCheckpointFile;
+    }
+
+    /**
+     * Sets the checkpoint file for resumable api (non post) uploads, an interrupted upload
+     * of the same file continues from its last acknowledged chunk
+     * @param uploadCheckpointFile checkpoint file or <code>null</code> to disable resumable uploads
+     * @see RegisterWork#setCheckpointFile(File)
+     */
+    public void setUploadCheckpointFile(File uploadCheckpointFile) {
+        this.uploadCheckpointFile = uploadCheckpointFile;
+    }
+
+    /**
+     * @return maximum number of api upload chunks in flight
+     */
+    public int getUploadWindow() {
+        return uploadWindow;
+    }
+
+    /**
+     * Sets the maximum number of chunks in flight for api (non post) uploads
+     * @param uploadWindow maximum number of chunks in flight, 1 uploads chunks sequentially
+     * @see RegisterWork#setUploadWindow(int)
+     */
+    public void setUploadWindow(int uploadWindow) {
+        if (uploadWindow < 1) {
+            throw new IllegalArgumentException("upload window must be at least 1");
+        }
+        this.uploadWindow = uploadWindow;
+    }
+
+    /**
+     * @return executor prefetching pages of page iterators and fetching pages of bulk loaders
+     */
+    public Executor getPageExecutor() {
+        return pageExecutor == null ? DefaultPageExecutor.INSTANCE : pageExecutor;
+    }
+
+    /**
+     * Sets the executor prefetching the next page while a page iterator consumes the current one
+     * @param pageExecutor page executor, <code>null</code> for a shared default executor
+     * @see PageIterator
+     */
+    public void setPageExecutor(Executor pageExecutor) {
+        this.pageExecutor = pageExecutor;
+    }
+
+    /**
+     * @return maximum number of pages fetched at once by bulk loaders
+     */
+    public int getPageParallelism() {
+        return pageParallelism;
+    }
+
+    /**
+     * Sets the maximum number of pages fetched at once by bulk loaders, on the page executor
+     * @param pageParallelism maximum number of pages fetched at once
+     * @see ParallelPageLoader
+     */
+    public void setPageParallelism(int pageParallelism) {
+        if (pageParallelism < 1) {
+            throw new IllegalArgumentException("page parallelism must be at least 1");
+        }
+        this.pageParallelism = pageParallelism;
+    }
+
     /**
      * @return the locale
      */
@@ -224,16 +381,16 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public AuthKeyState checkAuth(String authKey) throws ApiException {
-        setApiUrl();
         String result = api.getAuthKeyState(authKey);
         checkError(result);
-        String usercode = api.evalXml(result, "/authkeystate/usercode");
-        String authorized = api.evalXml(result, "/authkeystate/authorized");
+        ApiResponse response = api.parseResponse(result);
+        String usercode = response.evalXml("/authkeystate/usercode");
+        String authorized = response.evalXml("/authkeystate/authorized");
         AuthKeyState state = new AuthKeyState();
         state.setAuthorized(authorized);
         state.setCode(usercode);
         if (state.isAuthorized()) {
-            AuthkeyLevel level = AuthkeyLevel.valueOf(api.evalXml(result, "/authkeystate/level").toUpperCase());
+            AuthkeyLevel level = AuthkeyLevel.valueOf(response.evalXml("/authkeystate/level").toUpperCase());
             state.setLevel(level);
         }
         return state;
@@ -271,12 +428,12 @@ public class SafeCreativeAPIWrapper {
      */
     @SuppressWarnings("unchecked")
     public AuthKey createAuth(AuthkeyLevel authkeyLevel,boolean embeddable) throws ApiException {
-        setApiUrl();
         Map params = api.createParams("component", "authkey.create", "sharedkey", api.getSharedKey());
-        String result = api.callSigned(params, true, false, false);
+        String result = api.callSigned(getBaseUrl(), params, api.getPrivateKey(), true, false, false);
         checkError(result);
-        String auth = api.evalXml(result, "/authkeycreate/authkey");
-        String authPrivate = api.evalXml(result, "/authkeycreate/privatekey");
+        ApiResponse response = api.parseResponse(result);
+        String auth = response.evalXml("/authkeycreate/authkey");
+        String authPrivate = response.evalXml("/authkeycreate/privatekey");
         if (auth == null || authPrivate == null) {
             throw new ApiException("authkey.create error. Result: " + result);
         }
@@ -303,7 +460,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public User getUser(String code) throws ApiException {
-        setApiUrl();
         String result = null;
         try {
             result = callComponentSigned("user.get",getApi().getPrivateKey(),true,false,true, "code", code,"sharedkey",getApi().getSharedKey());
@@ -334,7 +490,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public UserQuota getUserQuota(AuthKey authKey) throws ApiException {
-        setApiUrl();
         String response = null;
         UserQuota quota = null;
         try {
@@ -347,9 +502,10 @@ public class SafeCreativeAPIWrapper {
             throw ex;
         }
 
-        XStream xs = createXStream();
-        xs.alias("userquota", UserQuota.class);
-        xs.aliasField("usercode", UserQuota.class, "userCode");
+        XStream xs = xstreamRegistry.get(registryKey("userquota", UserQuota.class, null), xstream -> {
+            xstream.alias("userquota", UserQuota.class);
+            xstream.aliasField("usercode", UserQuota.class, "userCode");
+        });
 
         try {
             quota = (UserQuota) xs.fromXML(response);
@@ -399,7 +555,6 @@ public class SafeCreativeAPIWrapper {
             String firstName, String middleName, String lastName,
             String addressline1, String addressline2,
             String addresszip, String addresscity, String addresscountry) throws ApiException {
-        setApiUrl();
         Map params = api.createParams("component", "user.link", "sharedkey", api.getSharedKey());
         params.put("mail", mail);
         params.put("level", level.name());
@@ -411,13 +566,15 @@ public class SafeCreativeAPIWrapper {
         params.put("addresszip", addresszip);
         params.put("addresscity", addresscity);
         params.put("addresscountry", addresscountry);        
-        String result = api.callSigned(params, true, false, false);
+        String result = api.callSigned(getBaseUrl(), params, api.getPrivateKey(), true, false, false);
         checkError(result);
         log.debug("user.link result:\n{}", result);
-        XStream xs = createXStream();
-        xs.aliasField("usercode", UserLink.class, "code");
-        xs.aliasField("authkey", UserLink.class, "authKey");
-        xs.aliasField("privatekey", UserLink.class, "authPrivateKey");
+        XStream xs = xstreamRegistry.get(registryKey("userlink", UserLink.class, null), xstream -> {
+            xstream.alias("userlink", UserLink.class);
+            xstream.aliasField("usercode", UserLink.class, "code");
+            xstream.aliasField("authkey", UserLink.class, "authKey");
+            xstream.aliasField("privatekey", UserLink.class, "authPrivateKey");
+        });
         return readObject(UserLink.class, result,xs);
     }
 
@@ -441,7 +598,6 @@ public class SafeCreativeAPIWrapper {
             String firstName, String middleName, String lastName,
             String addressline1, String addressline2,
             String addresszip, String addresscity, String addresscountry) throws ApiException {
-        setApiUrl();
         checkAuthKey(authKey);
         Map params = api.createParams("component", "user.modify", "authKey", authKey.getAuthkey());
         params.put("mail", mail);
@@ -453,7 +609,7 @@ public class SafeCreativeAPIWrapper {
         params.put("addresszip", addresszip);
         params.put("addresscity", addresscity);
         params.put("addresscountry", addresscountry);
-        String result = api.callSigned(params, true, false);
+        String result = api.callSigned(getBaseUrl(), params, api.getPrivateKey(), true, false, false);
         checkError(result);
         log.debug("user.modify result:\n{}", result);
         return checkReady(result);
@@ -467,10 +623,9 @@ public class SafeCreativeAPIWrapper {
      */
     @SuppressWarnings("unchecked")
     public boolean userUnLink(String userCode) throws ApiException {
-        setApiUrl();
         Map params = api.createParams("component", "user.unlink", "sharedkey", api.getSharedKey());
         params.put("usercode", userCode);
-        String result = api.callSigned(params, true, false,false);
+        String result = api.callSigned(getBaseUrl(), params, api.getPrivateKey(), true, false, false);
         checkError(result);
         log.debug("user.unlink result:\n{}", result);
         return checkReady(result);
@@ -487,9 +642,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public String getVersion() throws ApiException {
-        if (api.getBaseUrl() == null) {
-            api.setBaseUrl(getBaseUrl());
-        }
         String result = callComponent("version");
         String version = api.evalXml(result, "/version");
         return version;
@@ -514,7 +666,6 @@ public class SafeCreativeAPIWrapper {
      */
     @SuppressWarnings("unchecked")
     public List<Profile> getProfiles(AuthKey authKey) throws ApiException {
-        setApiUrl();
         checkAuthKey(authKey);
         String result = callComponentSigned("user.profiles",authKey,true,false,false);
         List<Profile> profiles = readList(result, "profiles", "profile", Profile.class);
@@ -552,12 +703,32 @@ public class SafeCreativeAPIWrapper {
      */
     @SuppressWarnings("unchecked")
     public ListPage<License> getLicenses(int page,AuthKey authKey) throws ApiException {
-        setApiUrl();
         checkAuthKey(authKey);
         String result = callComponentSigned("user.licenses",authKey,true,false,true,"page",page);
         return readListPage(result, License.class, new LicenseConverter());
     }
 
+    /**
+     * Iterates over every user available license fetching pages on demand
+     *
+     * @return Iterator of user avaliable licenses
+     * @see PageIterator
+     */
+    public PageIterator<License> iterateLicenses() {
+        return iterateLicenses(authKey);
+    }
+
+    /**
+     * Iterates over every user available license fetching pages on demand
+     *
+     * @param authKey authKey user authorization key
+     * @return Iterator of user avaliable licenses
+     * @see PageIterator
+     */
+    public PageIterator<License> iterateLicenses(final AuthKey authKey) {
+        return new PageIterator<License>(page -> getLicenses(page, authKey), getPageExecutor());
+    }
+
     /**
      * Get a map of the license features.
      *
@@ -566,14 +737,10 @@ public class SafeCreativeAPIWrapper {
      */
     @SuppressWarnings("unchecked")
     public EnumMap<License.Feature, LicenseFeatureObject> getLicenseFeatures() throws ApiException {
-        setApiUrl();
         String result = callComponent("license.features");
-        XStream xs = createXStream();
-
         // alias for license features
-        xs.registerConverter(new LicenseFeatureConverter());
-
-        List<LicenseFeatureObject> features = readList(result, "features", "feature", LicenseFeatureObject.class, xs);
+        List<LicenseFeatureObject> features = readList(result, "features", "feature", LicenseFeatureObject.class,
+                xs -> xs.registerConverter(new LicenseFeatureConverter()));
         log.debug("License features {}", features);
 
         // generate map
@@ -588,7 +755,6 @@ public class SafeCreativeAPIWrapper {
 
     @SuppressWarnings("unchecked")
     public List<Work.Type> getWorkTypes() throws ApiException {
-        setApiUrl();
         String result = callComponent("work.types");
         List<Work.Type> workTypes = readList(result, "worktypes", "worktype", Work.Type.class);
         log.debug("Work Types {}", workTypes);
@@ -597,22 +763,18 @@ public class SafeCreativeAPIWrapper {
 
     @SuppressWarnings("unchecked")
     public List<Work.TypeGroup> getWorkTypesTree() throws ApiException {
-        setApiUrl();
         String result = callComponent("work.types.tree");
-        XStream xs = createXStream();
-
         // alias for worktype
-        xs.aliasField("worktypes", Work.TypeGroup.class, "workTypes");
-        xs.alias("worktype", Work.Type.class);
-
-        List<Work.TypeGroup> workTypeGroups = readList(result, "worktypegroups", "worktypegroup", Work.TypeGroup.class, xs);
+        List<Work.TypeGroup> workTypeGroups = readList(result, "worktypegroups", "worktypegroup", Work.TypeGroup.class, xs -> {
+            xs.aliasField("worktypes", Work.TypeGroup.class, "workTypes");
+            xs.alias("worktype", Work.Type.class);
+        });
         log.debug("Work Type Groups {}", workTypeGroups);
         return workTypeGroups;
     }
 
     @SuppressWarnings("unchecked")
     public List<Work.Language> getWorkLanguages() throws ApiException {
-        setApiUrl();
         String result = callComponent("work.languages");
         List<Work.Language> workLanguages = readList(result, "worklanguages", "language", Work.Language.class);
         log.debug("Work Languages {}", workLanguages);
@@ -621,7 +783,6 @@ public class SafeCreativeAPIWrapper {
 
     @SuppressWarnings("unchecked")
     public List<Country> getCountries() throws ApiException {
-        setApiUrl();
         String result = callComponent("user.countries");
         List<Country> countries = readList(result, "countries", "country", Country.class);
         log.debug("Countries {}", countries);
@@ -639,7 +800,17 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public Work getWork(String code) throws ApiException {
-        setApiUrl();
+        return getWork(code, null);
+    }
+
+    /**
+     * Get public work info decoding only the given fields
+     * @param code
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Work or <code>null</code> if none found
+     * @throws ApiException
+     */
+    public Work getWork(String code, Set<Work.Field> fields) throws ApiException {
         String result = null;
         try {
             result = callComponent("work.get", "code", code);
@@ -649,7 +820,7 @@ public class SafeCreativeAPIWrapper {
             }
             throw ex;
         }        
-        return readObject(Work.class, result,new WorkConverter());
+        return readWork(result, fields);
     }
 
     /**
@@ -670,7 +841,18 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public Work getWorkPrivate(String code, AuthKey authKey) throws ApiException {
-        setApiUrl();
+        return getWorkPrivate(code, authKey, null);
+    }
+
+    /**
+     * Get private work info decoding only the given fields
+     * @param code
+     * @param authKey authKey user authorization key
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Work or <code>null</code> if none found
+     * @throws ApiException
+     */
+    public Work getWorkPrivate(String code, AuthKey authKey, Set<Work.Field> fields) throws ApiException {
         checkAuthKey(authKey);
         String result = null;
         try {
@@ -681,7 +863,7 @@ public class SafeCreativeAPIWrapper {
             }
             throw ex;
         }        
-        return readObject(Work.class, result,new WorkConverter());
+        return readWork(result, fields);
     }
 
     /**
@@ -714,12 +896,58 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public ListPage<Work> getWorkList(int page, AuthKey authKey) throws ApiException {
-        setApiUrl();
+        return getWorkList(page, authKey, null);
+    }
+
+    /**
+     * Iterates over every user's registered work fetching pages on demand
+     *
+     * @return Iterator of user's registered works
+     * @see PageIterator
+     */
+    public PageIterator<Work> iterateWorkList() {
+        return iterateWorkList(getAuthKey(), null);
+    }
+
+    /**
+     * Iterates over every user's registered work fetching pages on demand
+     *
+     * @param authKey authKey user authorization key
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Iterator of user's registered works
+     * @see PageIterator
+     */
+    public PageIterator<Work> iterateWorkList(final AuthKey authKey, final Set<Work.Field> fields) {
+        return new PageIterator<Work>(page -> getWorkList(page, authKey, fields), getPageExecutor());
+    }
+
+    /**
+     * Loader of every user's registered work page fetching pages concurrently
+     *
+     * @param authKey authKey user authorization key
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Loader of user's registered works
+     * @see ParallelPageLoader
+     */
+    public ParallelPageLoader<Work> bulkWorkList(final AuthKey authKey, final Set<Work.Field> fields) {
+        return new ParallelPageLoader<Work>(page -> getWorkList(page, authKey, fields),
+                getPageExecutor(), pageParallelism);
+    }
+
+    /**
+     * Gets user's registered works list decoding only the given work fields
+     *
+     * @param page page number
+     * @param authKey authKey user authorization key
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return List of user's registered works
+     * @throws ApiException
+     */
+    public ListPage<Work> getWorkList(int page, AuthKey authKey, Set<Work.Field> fields) throws ApiException {
         checkAuthKey(authKey);
         
-        String result = callComponentSigned("work.list", authKey, true, false, true, "page", String.valueOf(page));
-        ListPage<Work> results = readWorkListPage(result);
-        return results;
+        return decodeComponentSigned("work.list", authKey, true, false, true, createWorkListPageHandler(fields),
+                "page", String.valueOf(page));
     }
 
     /**
@@ -729,7 +957,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public boolean workDelete(String code) throws ApiException {
-        setApiUrl();        
         String result = callComponentSigned("work.delete", getAuthKey(), true, false, false, "code",code);
         return checkReady(result);
     }
@@ -761,7 +988,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public DownloadInfo getWorkDownload(String code,boolean owner, boolean isAttachment) throws ApiException {
-        setApiUrl();
         String result;
         if(owner) {
             checkAuthKey(authKey);
@@ -1102,6 +1328,20 @@ public class SafeCreativeAPIWrapper {
      * @see SearchMethod
      */
     public ListPage<Work> searchWorksByFields(int page,Object...fieldValues) throws ApiException {        
+        return searchWorksByFields(null, page, fieldValues);
+    }
+
+    /**
+     * Search works by search field decoding only the given work fields.
+     *
+     * @param fields fields to decode, <code>null</code> for every field
+     * @param page page number
+     * @param fieldValues Variable list of pairs of search field,value
+     * @return List of found works
+     * @throws ApiException
+     * @see SearchMethod
+     */
+    public ListPage<Work> searchWorksByFields(Set<Work.Field> fields,int page,Object...fieldValues) throws ApiException {
         if (fieldValues != null && fieldValues.length % 2 != 0) {
             throw new IllegalArgumentException("odd field value array size");
         }
@@ -1117,10 +1357,7 @@ public class SafeCreativeAPIWrapper {
         }
         fieldParamList.add("page");
         fieldParamList.add(String.valueOf(page));
-        setApiSearchUrl();
-        String result = callComponent("search.byfields",fieldParamList.toArray());
-        ListPage<Work> results = readWorkListPage(result);
-        return results;
+        return decodeSearchComponent("search.byfields", createWorkListPageHandler(fields), fieldParamList.toArray());
     }
 
 
@@ -1136,14 +1373,37 @@ public class SafeCreativeAPIWrapper {
         if(!method.name().startsWith("WORK_CNT_")) {
             throw new IllegalArgumentException("Bad search method "+method);
         }
-        setApiSearchUrl();
-        String result = callComponent("semantic.query",method.getFieldName(),value);
-        XStream xs = createXStream();
-        xs.registerConverter(new WorkConverter());
-        List<Work> results = readList(result, "works", "work", Work.class,xs);
+        String result = callSearchComponent("semantic.query",method.getFieldName(),value);
+        final WorkDecoder decoder = workDecoder;
+        if (decoder != null) {
+            return new PullParserResponseHandler<List<Work>>() {
+                @Override
+                protected List<Work> decode(XmlPullParser parser) throws XmlPullParserException, IOException {
+                    return decoder.decodeWorks(parser);
+                }
+            }.parse(result);
+        }
+        List<Work> results = readList(result, "works", "work", Work.class, xs -> xs.registerConverter(new WorkConverter()));
         return results;
     }
 
+    /**
+     * Search works by the content fingerprint of a local file.
+     *
+     * @param method A SearchMethod.WORK_CNT_XXX value
+     * @param file file to fingerprint
+     * @return List of found works
+     * @throws ApiException
+     * @throws IOException on file read error
+     * @see ContentFingerprint
+     */
+    public List<Work> searchWorksByContent(SearchMethod method,File file) throws ApiException, IOException {
+        if(!ContentFingerprint.isContentMethod(method)) {
+            throw new IllegalArgumentException("Bad search method "+method);
+        }
+        return searchWorksByContent(method, ContentFingerprint.compute(file, method).get(method));
+    }
+
     /**
      * Search works by MD5 hash.
      * @param md5 value
@@ -1175,14 +1435,25 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public ListPage<Work> searchWorksByHash(int page,SearchMethod method,String value) throws ApiException {
+        return searchWorksByHash(page, method, value, null);
+    }
+
+    /**
+     * Search works by hash decoding only the given work fields.
+     *
+     * @param page page number
+     * @param method A SearchMethod.HASH_XXX value
+     * @param value value
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return List of found works
+     * @throws ApiException
+     */
+    public ListPage<Work> searchWorksByHash(int page,SearchMethod method,String value,Set<Work.Field> fields) throws ApiException {
         if(!method.name().startsWith("HASH_")) {
             throw new IllegalArgumentException("Bad search method "+method);
         }
         //Direct search by hash (use main api servers instead of search servers):
-        setApiUrl();
-        String result = callComponent("search.byhash",method.getFieldName(),value,"page",page);
-        ListPage<Work> results = readWorkListPage(result);
-        return results;
+        return decodeComponent("search.byhash", createWorkListPageHandler(fields), method.getFieldName(), value, "page", page);
     }
 
     /**
@@ -1204,30 +1475,144 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public ListPage<Work> searchWorksByQuery(int page,String query) throws ApiException {
-        setApiSearchUrl();
-        String result = callComponent("search.byquery","query",query,"page",page);
-        ListPage<Work> results = readWorkListPage(result);
-        return results;
+        return searchWorksByQuery(page, query, null);
+    }
+
+    /**
+     * Search works by text query decoding only the given work fields.
+     * @param page page number
+     * @param query text query
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return List of found works
+     * @throws ApiException
+     */
+    public ListPage<Work> searchWorksByQuery(int page,String query,Set<Work.Field> fields) throws ApiException {
+        return decodeSearchComponent("search.byquery", createWorkListPageHandler(fields), "query", query, "page", page);
+    }
+
+    /**
+     * Iterates over every work found by text query fetching pages on demand.
+     * @param query text query
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Iterator of found works
+     * @see PageIterator
+     */
+    public PageIterator<Work> iterateWorksByQuery(final String query, final Set<Work.Field> fields) {
+        return new PageIterator<Work>(page -> searchWorksByQuery(page, query, fields), getPageExecutor());
+    }
+
+    /**
+     * Loader of every page of works found by text query fetching pages concurrently.
+     * @param query text query
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return Loader of found works
+     * @see ParallelPageLoader
+     */
+    public ParallelPageLoader<Work> bulkWorksByQuery(final String query, final Set<Work.Field> fields) {
+        return new ParallelPageLoader<Work>(page -> searchWorksByQuery(page, query, fields),
+                getPageExecutor(), pageParallelism);
+    }
+
+    /**
+     * Iterates over every work found by search fields fetching pages on demand.
+     * @param fields fields to decode, <code>null</code> for every field
+     * @param fieldValues Variable list of pairs of search field,value
+     * @return Iterator of found works
+     * @see PageIterator
+     * @see #searchWorksByFields(int, Object...)
+     */
+    public PageIterator<Work> iterateWorksByFields(final Set<Work.Field> fields, final Object... fieldValues) {
+        return new PageIterator<Work>(page -> searchWorksByFields(fields, page, fieldValues), getPageExecutor());
+    }
+
+    /**
+     * Loader of every page of works found by search fields fetching pages concurrently.
+     * @param fields fields to decode, <code>null</code> for every field
+     * @param fieldValues Variable list of pairs of search field,value
+     * @return Loader of found works
+     * @see ParallelPageLoader
+     * @see #searchWorksByFields(int, Object...)
+     */
+    public ParallelPageLoader<Work> bulkWorksByFields(final Set<Work.Field> fields, final Object... fieldValues) {
+        return new ParallelPageLoader<Work>(page -> searchWorksByFields(fields, page, fieldValues),
+                getPageExecutor(), pageParallelism);
     }
 
     ////////////////////////////////////////////////////////////////////////////
     // Internal api helpers
     ////////////////////////////////////////////////////////////////////////////
     protected String callComponent(String component, Object... params) throws ApiException {
+        return callComponentAt(getBaseUrl(), component, params);
+    }
+
+    protected String callSearchComponent(String component, Object... params) throws ApiException {
+        return callComponentAt(getBaseSearchUrl(), component, params);
+    }
+
+    private String callComponentAt(String baseUrl, String component, Object[] params) throws ApiException {
+        return call(baseUrl, createComponentParams(component, params));
+    }
+
+    /**
+     * Calls a component decoding its response straight from the response stream
+     * @param component api component
+     * @param handler response decoder
+     * @param params component parameters
+     * @return decoded response
+     * @throws ApiException on error response
+     */
+    protected <T> T decodeComponent(String component, Transport.ResponseHandler<T> handler, Object... params) throws ApiException {
+        return decode(getBaseUrl(), createComponentParams(component, params), handler);
+    }
+
+    /**
+     * Calls a search component decoding its response straight from the response stream
+     * @param component api component
+     * @param handler response decoder
+     * @param params component parameters
+     * @return decoded response
+     * @throws ApiException on error response
+     */
+    protected <T> T decodeSearchComponent(String component, Transport.ResponseHandler<T> handler, Object... params) throws ApiException {
+        return decode(getBaseSearchUrl(), createComponentParams(component, params), handler);
+    }
+
+    private Map<String, String> createComponentParams(String component, Object[] params) {
         Map<String, String> allParams = createParams(component);
-        if (params != null && params.length > 0) {
-            allParams.putAll(api.createParams(params));
-        }
+        addParams(allParams, params);
         if(getLocale() != null) {
             api.addLocale(allParams);
         }
-        return call(allParams);
+        return allParams;
+    }
+
+    private void addParams(Map<String, String> allParams, Object[] params) {
+        if (params == null || params.length == 0) {
+            return;
+        }
+        if (allParams instanceof RequestParams) {
+            ((RequestParams) allParams).add(params);
+        } else {
+            allParams.putAll(api.createParams(params));
+        }
+    }
+
+    protected <T> T decode(String baseUrl, Map<String, String> params, Transport.ResponseHandler<T> handler) throws ApiException {
+        try {
+            return api.call(baseUrl, params, true, handler);
+        } catch (Exception ex) {
+            throw unwrap(ex);
+        }
     }
 
     protected String call(Map<String, String> params) throws ApiException {
+        return call(getBaseUrl(), params);
+    }
+
+    protected String call(String baseUrl, Map<String, String> params) throws ApiException {
         String result = null;
         try {
-            result = api.call(params);
+            result = api.call(baseUrl, params, true);
         } catch (Exception ex) {
             throw ApiException.wrap(ex);
         }
@@ -1238,25 +1623,55 @@ public class SafeCreativeAPIWrapper {
     protected String callComponentSigned(String component,AuthKey authKey,boolean ztime,boolean noncekey,boolean addLocale,Object... params) throws ApiException {
         checkAuthKey(authKey);
         Map<String, String> allParams = api.createParams("component",component,"authkey", authKey.getAuthkey());
-        if (params != null && params.length > 0) {
-            allParams.putAll(api.createParams(params));
-        }
+        addParams(allParams, params);
         return callSigned(authKey.getPrivatekey(),ztime,noncekey,addLocale,allParams);
     }
 
     protected String callComponentSigned(String component,String privateKey,boolean ztime,boolean noncekey,boolean addLocale,Object... params) throws ApiException {
         Map<String, String> allParams = api.createParams("component", component);
-        if (params != null && params.length > 0) {
-            allParams.putAll(api.createParams(params));
-        }
+        addParams(allParams, params);
         return callSigned(privateKey,ztime,noncekey,addLocale,allParams);
     }
 
+    /**
+     * Calls a signed component decoding its response straight from the response stream
+     * @param component api component
+     * @param authKey authorization key
+     * @param ztime if <code>true</code> adds ztime parameter
+     * @param noncekey if <code>true</code> adds noncekey parameter
+     * @param addLocale if <code>true</code> adds locale parameter
+     * @param handler response decoder
+     * @param params component parameters
+     * @return decoded response
+     * @throws ApiException on error response
+     */
+    protected <T> T decodeComponentSigned(String component,AuthKey authKey,boolean ztime,boolean noncekey,boolean addLocale,
+            Transport.ResponseHandler<T> handler,Object... params) throws ApiException {
+        checkAuthKey(authKey);
+        Map<String, String> allParams = api.createParams("component",component,"authkey", authKey.getAuthkey());
+        addParams(allParams, params);
+        try {
+            return api.callSigned(getBaseUrl(), allParams, authKey.getPrivatekey(), ztime, noncekey, addLocale, handler);
+        } catch (Exception ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    /**
+     * Unwraps the api error of a decoding call
+     */
+    private ApiException unwrap(Exception ex) {
+        if (ex instanceof RuntimeException && ex.getCause() instanceof ApiException) {
+            return (ApiException) ex.getCause();
+        }
+        return ApiException.wrap(ex);
+    }
+
     @SuppressWarnings("unchecked")
     protected String callSigned(String privateKey,boolean ztime,boolean noncekey,boolean addLocale,Map<String, String> params) throws ApiException {
         String result = null;
         try {
-            result = api.callSigned(params, privateKey, ztime, noncekey,addLocale);
+            result = api.callSigned(getBaseUrl(), params, privateKey, ztime, noncekey,addLocale);
         } catch (Exception ex) {           
             throw ApiException.wrap(ex);
         }
@@ -1278,16 +1693,9 @@ public class SafeCreativeAPIWrapper {
     }
 
     protected void checkError(String response) throws ApiException {
-        if (api.isError(response)) {
-            try {
-                String errorCode = api.getErrorCode(response);
-                String errorMessage = api.getErrorMessage(response);
-                throw new ApiException(errorCode, errorMessage);
-            } catch (ApiException ex) {
-                throw ex;
-            } catch (Exception ex) {
-                throw new ApiException(ex,null,response);
-            }
+        ResponseStatus status = api.getResponseStatus(response);
+        if (status.isError()) {
+            throw new ApiException(status.getCode(), status.getMessage());
         }
     }
 
@@ -1303,29 +1711,98 @@ public class SafeCreativeAPIWrapper {
         return result.toString();
     }
 
-    private ListPage<Work> readWorkListPage(String response) {
-        return readListPage(response, Work.class, new WorkConverter());
+    /**
+     * @param fields fields to decode, <code>null</code> for every field
+     */
+    private Transport.ResponseHandler<ListPage<Work>> createWorkListPageHandler(Set<Work.Field> fields) {
+        final WorkDecoder decoder = workDecoder == null ? null : workDecoder.withFields(fields);
+        if (decoder != null) {
+            return new PullParserResponseHandler<ListPage<Work>>(decoder.isLazy()) {
+                @Override
+                protected ListPage<Work> decode(XmlPullParser parser) throws XmlPullParserException, IOException {
+                    return decoder.decodeListPage(parser);
+                }
+            };
+        }
+        return new XStreamResponseHandler<ListPage<Work>>(getListPageXStream(Work.class, new WorkConverter(fields)));
+    }
+
+    /**
+     * @param fields fields to decode, <code>null</code> for every field
+     */
+    private Work readWork(String response, Set<Work.Field> fields) throws ApiException {
+        final WorkDecoder decoder = workDecoder == null ? null : workDecoder.withFields(fields);
+        if (decoder != null) {
+            return new PullParserResponseHandler<Work>() {
+                @Override
+                protected Work decode(XmlPullParser parser) throws XmlPullParserException, IOException {
+                    return decoder.decodeWork(parser);
+                }
+            }.parse(response);
+        }
+        return readObject(Work.class, response,new WorkConverter(fields));
     }
 
     @SuppressWarnings("unchecked")
     protected <T extends Object> ListPage<T> readListPage(String response,Class<T> clazz,Converter converter) {
-        XStream xs = createXStream();        
-        xs.registerConverter(new ListPageConverter<T>(clazz,converter));                
-        ListPage<T> listPage = readObject(ListPage.class, response,xs);        
+        ListPage<T> listPage = readObject(ListPage.class, response,getListPageXStream(clazz, converter));
         return listPage;
     }
 
+    /**
+     * @return cached XStream instance decoding list pages of the given item type
+     */
+    protected <T extends Object> XStream getListPageXStream(final Class<T> clazz,final Converter converter) {
+        return xstreamRegistry.get(registryKey("listpage", clazz, converter), xs -> {
+            xs.registerConverter(new ListPageConverter<T>(clazz,converter));
+            xs.alias(ListPage.class.getSimpleName().toLowerCase(), ListPage.class);
+        });
+    }
+
+    /**
+     * @return cached XStream instance decoding objects of the given type
+     */
+    protected <T> XStream getObjectXStream(final Class<T> clazz,final Converter converter) {
+        return xstreamRegistry.get(registryKey("object", clazz, converter), xs -> {
+            if(converter != null) {
+                xs.registerConverter(converter);
+            }
+            xs.alias(clazz.getSimpleName().toLowerCase(), clazz);
+        });
+    }
+
+    /**
+     * Registry key of an XStream configuration, each kind of configuration having its own key namespace
+     */
+    private static String registryKey(String kind, Class<?> clazz, Converter converter) {
+        String key = kind + ":" + clazz.getName();
+        if (converter != null) {
+            key += ":" + converter.getClass().getName();
+            if (converter instanceof AbstractModelConverter) {
+                key += ((AbstractModelConverter) converter).getConfigurationKey();
+            }
+        }
+        return key;
+    }
+
     private <T extends Object> List<T> readList(String response, String listElement, String element, Class<T> clazz) {
         return readList(response, listElement, element, clazz,null);
     }
 
+    /**
+     * Reads a list response
+     * @param configurer extra configuration for the list type, the same for every call with these elements
+     */
     @SuppressWarnings("unchecked")
-    private <T extends Object> List<T> readList(String response, String listElement, String element, Class<T> clazz,XStream xs) {
-        if(xs == null)  {
-            xs = createXStream();
-        }
-        xs.alias(listElement, List.class);
-        xs.alias(element, clazz);
+    private <T extends Object> List<T> readList(String response, final String listElement, final String element, final Class<T> clazz,
+            final XStreamRegistry.Configurer configurer) {
+        XStream xs = xstreamRegistry.get("list:" + listElement + ":" + element + ":" + clazz.getName(), xstream -> {
+            if(configurer != null) {
+                configurer.configure(xstream);
+            }
+            xstream.alias(listElement, List.class);
+            xstream.alias(element, clazz);
+        });
         Object result = null;
         try {
             result = xs.fromXML(response);
@@ -1336,7 +1813,7 @@ public class SafeCreativeAPIWrapper {
     }
 
     private Object readObject(String response) {
-        XStream xs = createXStream();
+        XStream xs = xstreamRegistry.get("object", null);
         Object result = null;
         try {
             result = xs.fromXML(response);
@@ -1353,19 +1830,15 @@ public class SafeCreativeAPIWrapper {
 
     @SuppressWarnings("unchecked")
     protected <T> T readObject(Class<T> clazz, String response,Converter converter) {
-        XStream xs = createXStream();
-        if(converter != null) {
-            xs.registerConverter(converter);
-        }
-        return readObject(clazz, response,xs);
+        return readObject(clazz, response,getObjectXStream(clazz, converter));
     }
 
+    /**
+     * Reads an object response
+     * @param xs XStream instance already configured for the object type
+     */
     @SuppressWarnings("unchecked")
     <T> T readObject(Class<T> clazz, String response,XStream xs) {
-        if(xs == null)  {
-            xs = createXStream();
-        }
-        xs.alias(clazz.getSimpleName().toLowerCase(), clazz);
         T result = null;
         try {
             result = (T) xs.fromXML(response);
@@ -1375,10 +1848,18 @@ public class SafeCreativeAPIWrapper {
         return result;
     }
 
+    /**
+     * @deprecated endpoints are passed with each call, see {@link #callComponent} and {@link #callSearchComponent}
+     */
+    @Deprecated
     protected void setApiUrl() {
         api.setBaseUrl(getBaseUrl());
     }
 
+    /**
+     * @deprecated endpoints are passed with each call, see {@link #callComponent} and {@link #callSearchComponent}
+     */
+    @Deprecated
     protected void setApiSearchUrl() {
         api.setBaseUrl(getBaseSearchUrl());
     }
@@ -1398,7 +1879,6 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     private String workRegisterCall(Work work, Map<String, String> params) throws ApiException {
-        setApiUrl();
         checkAuthKey(authKey);
 
         params.put("component", "work.register");
@@ -1421,7 +1901,7 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException,FileNotFoundException
      */
     public String uploadFile(File file, String fileName, boolean byPost,UploadProgressListener uploadListener) throws ApiException, FileNotFoundException {
-		return uploadFileSource(new FilePartSource(fileName, file), byPost, uploadListener);
+		return uploadFileSource(new LocalFilePartSource(fileName, file), byPost, uploadListener);
 	}
 
 	
@@ -1457,7 +1937,7 @@ public class SafeCreativeAPIWrapper {
      * @param fileSource <code>PartSource</code> to upload 
      * @param byPost true - upload file using POST, false - upload by API
 	 * @param uploadListener Upload progress listener to notify if not <code>null</code>* 
-	 * @param checkSum Optional SHA-1 checksum if available, otherwise it will be calculated again for the file part source
+	 * @param checkSum Optional SHA-1 checksum if available, otherwise it will be calculated while uploading by API
      * @return upload ticket or null if fails
      * @throws ApiException
      */
@@ -1465,27 +1945,50 @@ public class SafeCreativeAPIWrapper {
         if(fileSource == null) {
             return null;
         } else {
-            // Look up
-            Map<String, String> params = api.createParams("component", "work.upload.lookup");
-            params.put("authkey", authKey.getAuthkey());
-            params.put("filename", fileSource.getFileName());
-            if (byPost) {
-                params.put("bypost", "true");
+            RegisterWork registerer = new RegisterWork(api);
+            registerer.setUploadProgressListener(uploadListener);
+            registerer.setUploadWindow(uploadWindow);
+            registerer.setMaxChunkSize(maxChunkSize);
+            registerer.setChunkSize(chunkSize);
+            registerer.setAdaptiveChunkSize(adaptiveChunkSize);
+            UploadSession session = null;
+            if (!byPost && uploadCheckpointFile != null) {
+                registerer.setCheckpointFile(uploadCheckpointFile);
+                try {
+                    session = registerer.loadUploadSession(fileSource);
+                } catch (IOException ex) {
+                    throw ApiException.wrap(ex);
+                }
             }
-            String response = api.callSigned(params, authKey.getPrivatekey(), true, false);
-            checkError(response);
 
-            String uploadURL = api.evalXml(response, "/workuploadlookup/uploadurl");
-            log.debug("Upload URL: {}", uploadURL);
-            String uploadID = api.evalXml(response, "/workuploadlookup/uploadid");
-            log.debug("Upload id: {}", uploadID);
+            Map<String, String> params;
+            String uploadURL;
+            String uploadID;
+            if (session != null) {
+                log.info("Resuming upload {}", session);
+                uploadURL = session.getUploadURL();
+                uploadID = session.getUploadID();
+            } else {
+                // Look up
+                params = api.createParams("component", "work.upload.lookup");
+                params.put("authkey", authKey.getAuthkey());
+                params.put("filename", fileSource.getFileName());
+                if (byPost) {
+                    params.put("bypost", "true");
+                }
+                String response = api.callSigned(getBaseUrl(), params, authKey.getPrivatekey(), true, false, false);
+                checkError(response);
+
+                ApiResponse lookup = api.parseResponse(response);
+                uploadURL = lookup.evalXml("/workuploadlookup/uploadurl");
+                log.debug("Upload URL: {}", uploadURL);
+                uploadID = lookup.evalXml("/workuploadlookup/uploadid");
+                log.debug("Upload id: {}", uploadID);
+            }
 
             // Upload
             String uploadTicket = null;
-            RegisterWork registerer = new RegisterWork(api);
-            registerer.setUploadProgressListener(uploadListener);
 
-            api.setBaseUrl(uploadURL);
             if (byPost) {
                 ////////////////////////////////////////////////////////////////////
                 //POST Upload:
@@ -1502,12 +2005,8 @@ public class SafeCreativeAPIWrapper {
 					if(checkSum != null && checkSum.length == 1) {
 						sha1CheckSum = checkSum[0];
 					}
-					if(StringUtils.isBlank(sha1CheckSum)) {
-						log.info("Building SHA-1 checksum");
-						sha1CheckSum = Digest.getHexDigest(fileSource.createInputStream(), Digest.SHA1);
-					}
                     uploadTicket = registerer.uploadFile(
-							uploadURL, uploadID, fileSource, sha1CheckSum							
+							uploadURL, uploadID, fileSource, sha1CheckSum, session							
 					);
                     log.info("Successfully uploaded file: {}", fileSource.getFileName());
                 }
@@ -1528,12 +2027,11 @@ public class SafeCreativeAPIWrapper {
      * @throws ApiException
      */
     public boolean uploadTicketStatus(String uploadTicket) throws ApiException {
-        setApiUrl();
         checkAuthKey(authKey);
         Map<String, String> params = api.createParams("component", "work.uploadticket.status");
         params.put("authkey", authKey.getAuthkey());
         params.put("uploadticket", uploadTicket);
-        String result = api.callSigned(params, authKey.getPrivatekey(), true, false);
+        String result = api.callSigned(getBaseUrl(), params, authKey.getPrivatekey(), true, false, false);
         checkError(result);
         log.debug("work.uploadticket.status result:\n{}", result);
         return checkReady(result);
@@ -1546,8 +2044,12 @@ public class SafeCreativeAPIWrapper {
 		return work;
 	}
 
-	private XStream createXStream() {				
-		return new XStream();
-	}
-
+    /**
+     * Shared executor for page prefetching and bulk loading, created on first use,
+     * running at most as many calls as the default transport connections per host
+     */
+    private static class DefaultPageExecutor {
+        static final Executor INSTANCE = AsyncSafeCreativeAPIWrapper.createDefaultExecutor(
+                HttpClientTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
 }
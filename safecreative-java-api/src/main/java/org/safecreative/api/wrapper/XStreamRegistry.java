@@ -0,0 +1,74 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import com.thoughtworks.xstream.XStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of pre-configured XStream instances keyed by result type.
+ * Each instance is built and configured once, on first use, and shared afterwards;
+ * configured instances are only used for unmarshalling, which XStream allows concurrently.
+ */
+public class XStreamRegistry {
+
+    /**
+     * Configures a new XStream instance: converters, aliases...
+     */
+    public interface Configurer {
+        public void configure(XStream xs);
+    }
+
+    private final ConcurrentMap<String, XStream> instances = new ConcurrentHashMap<String, XStream>();
+
+    /**
+     * Gets the XStream instance of a result type, building it on first use
+     * @param key result type key, the same key must always be given the same configuration
+     * @param configurer configuration for a new instance, may be <code>null</code>
+     * @return configured instance
+     */
+    public XStream get(String key, Configurer configurer) {
+        XStream xs = instances.get(key);
+        if (xs == null) {
+            xs = new XStream();
+            if (configurer != null) {
+                configurer.configure(xs);
+            }
+            XStream previous = instances.putIfAbsent(key, xs);
+            if (previous != null) {
+                xs = previous;
+            }
+        }
+        return xs;
+    }
+
+    /**
+     * Drops every cached instance
+     */
+    public void clear() {
+        instances.clear();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import org.safecreative.api.ApiException;
+import org.safecreative.api.SafeCreativeAPI;
+import org.safecreative.api.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Response handler decoding api responses with XStream straight from the response
+ * stream through the xpp3 pull parser, without reading the response into a string.
+ * Error responses are detected from their root element and thrown as an
+ * <code>IOException</code> caused by the <code>ApiException</code>.
+ *
+ * @param <T> decoded type
+ */
+public class XStreamResponseHandler<T> implements Transport.ResponseHandler<T> {
+
+    private static Logger log = LoggerFactory.getLogger(XStreamResponseHandler.class);
+    private static final HierarchicalStreamDriver driver = new XppDriver();
+    private final XStream xs;
+
+    /**
+     * Constructor
+     * @param xs XStream instance already configured for the response type
+     */
+    public XStreamResponseHandler(XStream xs) {
+        this.xs = xs;
+    }
+
+    public T handle(InputStream in) throws IOException {
+        HierarchicalStreamReader reader;
+        try {
+            reader = driver.createReader(new InputStreamReader(in, SafeCreativeAPI.DEFAULT_ENCODING));
+        } catch (XStreamException e) {
+            log.error("Parsing xml response", e);
+            return null;
+        }
+        String root = reader.getNodeName();
+        if ("error".equals(root) || "exception".equals(root)) {
+            throw new IOException(readError(reader));
+        }
+        try {
+            return decode(reader);
+        } catch (XStreamException e) {
+            log.error("Parsing xml response", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a response, the reader is positioned at the root element
+     * @param reader response reader
+     * @return decoded response
+     */
+    @SuppressWarnings("unchecked")
+    protected T decode(HierarchicalStreamReader reader) {
+        return (T) xs.unmarshal(reader);
+    }
+
+    private ApiException readError(HierarchicalStreamReader reader) {
+        String errorCode = null;
+        String errorMessage = null;
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            String node = reader.getNodeName();
+            if ("errorId".equals(node) || "exceptionId".equals(node)) {
+                errorCode = reader.getValue();
+            } else if ("errorMessage".equals(node) || "exceptionMessage".equals(node)) {
+                errorMessage = reader.getValue();
+            }
+            reader.moveUp();
+        }
+        return new ApiException(errorCode, errorMessage);
+    }
+}
@@ -30,9 +30,8 @@ import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,28 +44,110 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractModelConverter implements Converter{
     private static Logger log = LoggerFactory.getLogger(AbstractModelConverter.class);
     
-    private final static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    /**
+     * Api date layout: <code>yyyy-MM-dd'T'HH:mm:ss'Z'</code>
+     */
+    private final static String DATE_LAYOUT = "0000-00-00T00:00:00Z";
+    /**
+     * Time zone dates are read in, the default one when loaded as the former <code>SimpleDateFormat</code>
+     */
+    private final static TimeZone dateTimeZone = TimeZone.getDefault();
+    private final static long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
 
     public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
         throw new UnsupportedOperationException("Not supported");
     }
 
+    /**
+     * @return key telling apart differently configured instances of the converter class,
+     * XStream instances configured with it are cached by class and key
+     */
+    public String getConfigurationKey() {
+        return "";
+    }
+
     protected Date readDate(HierarchicalStreamReader reader) {
-        Date result = null;
-        try {
-            result = dateFormat.parse(reader.getValue());
-        } catch (ParseException ex) {
+        return parseDate(reader.getValue());
+    }
+
+    protected URL readUrl(HierarchicalStreamReader reader) {
+        return parseUrl(reader.getValue(), reader.getNodeName());
+    }
+
+    /**
+     * Parses an api date value.<br/>
+     * Thread safe and allocating nothing but the result, reads the fixed <code>yyyy-MM-dd'T'HH:mm:ss'Z'</code> layout
+     * leniently (out of range fields roll over) ignoring trailing characters, as the
+     * <code>SimpleDateFormat</code> formerly used did.
+     * @param value date value
+     * @return parsed date or <code>null</code> if invalid
+     */
+    static Date parseDate(String value) {
+        return parseDate(value, dateTimeZone);
+    }
+
+    /**
+     * Parses an api date in the given time zone
+     * @param value date value
+     * @param timeZone time zone of the date wall time
+     * @return parsed date or <code>null</code> if invalid
+     */
+    static Date parseDate(String value, TimeZone timeZone) {
+        if (value == null || value.length() < DATE_LAYOUT.length()) {
+            return null;
+        }
+        for (int i = 0; i < DATE_LAYOUT.length(); i++) {
+            char layout = DATE_LAYOUT.charAt(i);
+            char c = value.charAt(i);
+            if (layout == '0' ? c < '0' || c > '9' : c != layout) {
+                return null;
+            }
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2) - 1;
+        year += Math.floorDiv(month, 12);
+        month = Math.floorMod(month, 12) + 1;
+        long days = daysFromCivil(year, month) + digits(value, 8, 2) - 1;
+        long millis = days * MILLIS_PER_DAY
+                + ((digits(value, 11, 2) * 60L + digits(value, 14, 2)) * 60L + digits(value, 17, 2)) * 1000L;
+        // Wall time to utc, times skipped by a transition take the offset in effect before it
+        int offset = timeZone.getOffset(millis - timeZone.getRawOffset());
+        millis -= timeZone.getOffset(millis - offset);
+        return new Date(millis);
+    }
 
+    private static int digits(String value, int offset, int length) {
+        int result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            result = result * 10 + value.charAt(i) - '0';
         }
         return result;
     }
 
-    protected URL readUrl(HierarchicalStreamReader reader) {
+    /**
+     * @return days since 1970-01-01 of the first day of the given month (proleptic gregorian calendar)
+     */
+    private static long daysFromCivil(int year, int month) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Parses an url value
+     * @param value url value
+     * @param node element name, for logging
+     * @return parsed url or <code>null</code> if invalid
+     */
+    static URL parseUrl(String value, String node) {
         URL result = null;
         try {
-            result = new URL(reader.getValue());
+            result = new URL(value);
         } catch (MalformedURLException ex) {
-            log.error(String.format("bad url %s for element %s", reader.getValue(), reader.getNodeName()), ex);
+            log.error(String.format("bad url %s for element %s", value, node), ex);
         }
         return result;
     }
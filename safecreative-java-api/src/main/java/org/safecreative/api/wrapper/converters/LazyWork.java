@@ -0,0 +1,167 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper.converters;
+
+import java.io.ObjectStreamException;
+import java.util.List;
+import org.safecreative.api.wrapper.model.License;
+import org.safecreative.api.wrapper.model.Metadata;
+import org.safecreative.api.wrapper.model.User;
+import org.safecreative.api.wrapper.model.Work;
+
+/**
+ * Work decoded without its heavy sub trees (authors, rights holders, informers, license,
+ * metadata and relations). It keeps a copy of its own element text, so the page response
+ * is not retained, and decodes them all the first time any of them is accessed, then
+ * releases the text. Setting them decodes them first too, so decoding never overwrites
+ * set values. Decoding errors are thrown on every access until the text decodes.
+ */
+class LazyWork extends Work {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient final WorkDecoder decoder;
+    private transient volatile String element;
+    private transient Thread loadingThread;
+
+    LazyWork(WorkDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * @param element text of the work element, decoded on first access
+     */
+    void setElement(String element) {
+        this.element = element;
+    }
+
+    /**
+     * @return <code>true</code> once the heavy sub trees are decoded
+     */
+    boolean isLoaded() {
+        return element == null;
+    }
+
+    private void load() {
+        if (element == null || loadingThread == Thread.currentThread()) {
+            return;
+        }
+        synchronized (this) {
+            String text = element;
+            if (text == null) {
+                return;
+            }
+            loadingThread = Thread.currentThread();
+            try {
+                XmlTextPullParser parser = new XmlTextPullParser();
+                parser.setInput(text);
+                parser.nextTag();
+                decoder.decodeLazyElements(parser, this);
+                element = null;
+            } catch (Exception e) {
+                throw new RuntimeException("Decoding work " + getCode(), e);
+            } finally {
+                loadingThread = null;
+            }
+        }
+    }
+
+    @Override
+    public List<User> getAuthors() {
+        load();
+        return super.getAuthors();
+    }
+
+    @Override
+    public void setAuthors(List<User> authors) {
+        load();
+        super.setAuthors(authors);
+    }
+
+    @Override
+    public List<User> getRightHolders() {
+        load();
+        return super.getRightHolders();
+    }
+
+    @Override
+    public void setRightHolders(List<User> rightHolders) {
+        load();
+        super.setRightHolders(rightHolders);
+    }
+
+    @Override
+    public List<User> getInformers() {
+        load();
+        return super.getInformers();
+    }
+
+    @Override
+    public void setInformers(List<User> informers) {
+        load();
+        super.setInformers(informers);
+    }
+
+    @Override
+    public License getLicense() {
+        load();
+        return super.getLicense();
+    }
+
+    @Override
+    public void setLicense(License license) {
+        load();
+        super.setLicense(license);
+    }
+
+    @Override
+    public Metadata getMetadata() {
+        load();
+        return super.getMetadata();
+    }
+
+    @Override
+    public void setMetadata(Metadata metadata) {
+        load();
+        super.setMetadata(metadata);
+    }
+
+    @Override
+    public List<Work> getRelations(RelationType relationType) {
+        load();
+        return super.getRelations(relationType);
+    }
+
+    @Override
+    public void setRelations(RelationType relationType, List<Work> works) {
+        load();
+        super.setRelations(relationType, works);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        load();
+        return this;
+    }
+}
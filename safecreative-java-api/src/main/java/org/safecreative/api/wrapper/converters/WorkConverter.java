@@ -29,6 +29,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.safecreative.api.wrapper.model.License;
 import org.safecreative.api.wrapper.model.Link;
@@ -54,6 +55,31 @@ public class WorkConverter extends AbstractModelConverter {
 
     private static Logger log = LoggerFactory.getLogger(WorkConverter.class);
     private LicenseConverter licenseConverter;
+    private final Set<Work.Field> fields;
+
+    public WorkConverter() {
+        this(null);
+    }
+
+    /**
+     * Constructor with a field projection, elements of other fields are skipped undecoded
+     * @param fields fields to decode, <code>null</code> for every field
+     */
+    public WorkConverter(Set<Work.Field> fields) {
+        this.fields = Work.Field.projection(fields);
+    }
+
+    /**
+     * @return decoded fields, <code>null</code> for every field
+     */
+    public Set<Work.Field> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String getConfigurationKey() {
+        return fields == null ? "" : fields.toString();
+    }
 
     public boolean canConvert(Class type) {
         return Work.class.equals(type);
@@ -63,15 +89,21 @@ public class WorkConverter extends AbstractModelConverter {
         Work work = new Work();
         //Code
         reader.moveDown();
-        work.setCode(reader.getValue());
+        if (fields == null || fields.contains(Work.Field.CODE)) {
+            work.setCode(reader.getValue());
+        }
         reader.moveUp();
         //Title
         reader.moveDown();
-        work.setTitle(reader.getValue());
+        if (fields == null || fields.contains(Work.Field.TITLE)) {
+            work.setTitle(reader.getValue());
+        }
         reader.moveUp();
         while (reader.hasMoreChildren()) {
             reader.moveDown();
-            unmarshalWork(work,reader,context);
+            if (Work.Field.isProjected(fields, reader.getNodeName())) {
+                unmarshalWork(work,reader,context);
+            }
             reader.moveUp();
         }
         return work;
@@ -255,8 +287,8 @@ public class WorkConverter extends AbstractModelConverter {
                 reader.moveDown();
                 String propertyNS = reader.getAttribute("property");
                 String [] namespaceParts = propertyNS.split(":");
-                Metadata.Entry entry = new Entry(namespaceParts[0],namespaceParts[1],reader.getValue());
-                metadata.add(entry);
+                Metadata.Entry entry = new Entry(namespaceParts[0],namespaceParts[1],null);
+                //Attributes must be read before the value, reading it moves the underlying parser
                 @SuppressWarnings("unchecked")
 				Iterator<String> attributes = reader.getAttributeNames();
                 while(attributes.hasNext()) {
@@ -266,6 +298,8 @@ public class WorkConverter extends AbstractModelConverter {
             		}
             		entry.getAttributes().put(attrName, reader.getAttribute(attrName));
                 }
+                entry.setValue(reader.getValue());
+                metadata.add(entry);
                 reader.moveUp();
             }
         	processedNode = true;
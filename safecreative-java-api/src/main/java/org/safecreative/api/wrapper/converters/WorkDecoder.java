@@ -0,0 +1,566 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper.converters;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.safecreative.api.wrapper.ListPage;
+import org.safecreative.api.wrapper.model.Country;
+import org.safecreative.api.wrapper.model.License;
+import org.safecreative.api.wrapper.model.Link;
+import org.safecreative.api.wrapper.model.Metadata;
+import org.safecreative.api.wrapper.model.User;
+import org.safecreative.api.wrapper.model.Work;
+import org.safecreative.api.wrapper.model.Work.RelationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Pull parser <code>Work</code> decoder.<br/>
+ * Decodes the same xml as {@link WorkConverter} into the same objects, reading straight
+ * from an xpp3 parser without XStream readers in between and building array backed lists.
+ * Instances may be shared between threads.<br/>
+ * Every decode method expects the parser positioned at the start tag of the element to read
+ * and leaves it at the matching end tag.
+ */
+public class WorkDecoder {
+
+    private static Logger log = LoggerFactory.getLogger(WorkDecoder.class);
+    private final Set<Work.Field> fields;
+    private volatile boolean lazy;
+
+    public WorkDecoder() {
+        this(null);
+    }
+
+    /**
+     * Constructor with a field projection, elements of other fields are skipped undecoded
+     * @param fields fields to decode, <code>null</code> for every field
+     */
+    public WorkDecoder(Set<Work.Field> fields) {
+        this.fields = Work.Field.projection(fields);
+    }
+
+    /**
+     * @return decoded fields, <code>null</code> for every field
+     */
+    public Set<Work.Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param fields fields to decode, <code>null</code> for every field
+     * @return decoder like this one decoding the given fields
+     */
+    public WorkDecoder withFields(Set<Work.Field> fields) {
+        if (fields == null && this.fields == null) {
+            return this;
+        }
+        WorkDecoder decoder = new WorkDecoder(fields);
+        decoder.setLazy(lazy);
+        return decoder;
+    }
+
+    /**
+     * @return <code>true</code> if list page works are decoded lazily
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets lazy list page decoding: list page works keep the slice of the response holding them
+     * and decode their authors, rights holders, informers, license, metadata and relations the
+     * first time any of them is accessed.<br/>
+     * Only applies when parsing from a string with a {@link XmlTextPullParser}.
+     * @param lazy <code>true</code> to decode list page works lazily
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Decodes a work list page
+     * @param parser parser positioned at the <code>listpage</code> element
+     * @return list page
+     */
+    public ListPage<Work> decodeListPage(XmlPullParser parser) throws XmlPullParserException, IOException {
+        ListPage<Work> listPage = new ListPage<Work>();
+        requireChild(parser);
+        listPage.setRecordTotal(Integer.parseInt(readText(parser)));
+        requireChild(parser);
+        listPage.setPageTotal(Integer.parseInt(readText(parser)));
+        //Read list items
+        requireChild(parser);
+        boolean lazyItems = lazy && parser instanceof XmlTextPullParser && ((XmlTextPullParser) parser).getInputText() != null;
+        while (nextChild(parser)) {
+            listPage.add(lazyItems ? decodeLazyWork((XmlTextPullParser) parser) : decodeWork(parser));
+        }
+        skip(parser);
+        return listPage;
+    }
+
+    /**
+     * Decodes a work list
+     * @param parser parser positioned at the list element
+     * @return list of works
+     */
+    public List<Work> decodeWorks(XmlPullParser parser) throws XmlPullParserException, IOException {
+        List<Work> works = new ArrayList<Work>();
+        while (nextChild(parser)) {
+            works.add(decodeWork(parser));
+        }
+        return works;
+    }
+
+    /**
+     * Decodes a work
+     * @param parser parser positioned at the <code>work</code> element
+     * @return work
+     */
+    public Work decodeWork(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Work work = new Work();
+        decodeCodeAndTitle(parser, work);
+        while (nextChild(parser)) {
+            if (Work.Field.isProjected(fields, parser.getName())) {
+                decodeWorkElement(work, parser);
+            } else {
+                skip(parser);
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Decodes a work but its heavy sub trees, kept undecoded until accessed
+     * @param parser parser positioned at the <code>work</code> element
+     * @return lazy work
+     */
+    private Work decodeLazyWork(XmlTextPullParser parser) throws XmlPullParserException, IOException {
+        LazyWork work = new LazyWork(this);
+        int start = parser.getStartTagOffset();
+        decodeCodeAndTitle(parser, work);
+        while (nextChild(parser)) {
+            String node = parser.getName();
+            if (!isLazyElement(node) && Work.Field.isProjected(fields, node)) {
+                decodeWorkElement(work, parser);
+            } else {
+                skip(parser);
+            }
+        }
+        work.setElement(parser.getInputText().substring(start, parser.getEndTagOffset()));
+        return work;
+    }
+
+    /**
+     * Decodes the sub trees a lazy work skipped
+     * @param parser parser positioned at the <code>work</code> element
+     * @param work lazy work
+     */
+    void decodeLazyElements(XmlPullParser parser, Work work) throws XmlPullParserException, IOException {
+        while (nextChild(parser)) {
+            String node = parser.getName();
+            if (isLazyElement(node) && Work.Field.isProjected(fields, node)) {
+                decodeWorkElement(work, parser);
+            } else {
+                skip(parser);
+            }
+        }
+    }
+
+    private void decodeCodeAndTitle(XmlPullParser parser, Work work) throws XmlPullParserException, IOException {
+        //Code
+        requireChild(parser);
+        if (fields == null || fields.contains(Work.Field.CODE)) {
+            work.setCode(readText(parser));
+        } else {
+            skip(parser);
+        }
+        //Title
+        requireChild(parser);
+        if (fields == null || fields.contains(Work.Field.TITLE)) {
+            work.setTitle(readText(parser));
+        } else {
+            skip(parser);
+        }
+    }
+
+    private static boolean isLazyElement(String node) {
+        switch (node) {
+            case "authors":
+            case "rights-holders":
+            case "informers":
+            case "license":
+            case "metadata":
+            case "relations":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes a work child element
+     * @param work work being decoded
+     * @param parser parser positioned at the child element
+     * @return <code>true</code> if the element was recognized
+     */
+    protected boolean decodeWorkElement(Work work, XmlPullParser parser) throws XmlPullParserException, IOException {
+        String node = parser.getName();
+        switch (node) {
+            case "entrydate":
+                work.setEntryDate(readRequiredDate(parser));
+                return true;
+            case "updatedate":
+                work.setUpdateDate(readRequiredDate(parser));
+                return true;
+            case "excerpt":
+                work.setExcerpt(readText(parser));
+                return true;
+            case "tags":
+                work.setTags(readText(parser));
+                return true;
+            case "thumbnail":
+                work.setThumbnail(readUrl(parser));
+                return true;
+            case "preview":
+                work.setPreview(readUrl(parser));
+                return true;
+            case "mimetype":
+                work.setMimeType(readText(parser));
+                return true;
+            case "links":
+                work.setLinks(readLinks(parser));
+                return true;
+            case "relations":
+                readRelations(parser, work);
+                return true;
+            case "authors":
+                work.setAuthors(readUsers(parser));
+                return true;
+            case "rights-holders":
+                work.setRightHolders(readUsers(parser));
+                return true;
+            case "informers":
+                work.setInformers(readUsers(parser));
+                return true;
+            case "license":
+                work.setLicense(readLicense(parser));
+                return true;
+            case "human-url":
+                work.setHumanUrl(readUrl(parser));
+                return true;
+            case "machine-url":
+                work.setApiUrl(readUrl(parser));
+                return true;
+            case "allowdownload":
+                work.setAllowDownload(Boolean.valueOf(readText(parser)));
+                return true;
+            case "allowpreview":
+                work.setAllowPreview(Boolean.valueOf(readText(parser)));
+                return true;
+            case "allowevaluation":
+                work.setAllowEvaluation(Boolean.valueOf(readText(parser)));
+                return true;
+            case "registrypublic":
+                work.setRegistryPublic(Boolean.valueOf(readText(parser)));
+                return true;
+            case "allowsale":
+                work.setAllowSale(Boolean.valueOf(readText(parser)));
+                return true;
+            case "allowlicensing":
+                work.setAllowLicensing(Boolean.valueOf(readText(parser)));
+                return true;
+            case "worktype": {
+                requireChild(parser);
+                Work.Type type = Work.Type.fromCode(readText(parser));
+                requireChild(parser);
+                type.setName(readText(parser));
+                skip(parser);
+                work.setType(type);
+                return true;
+            }
+            case "worktypegroup": {
+                Work.TypeGroup typeGroup = new Work.TypeGroup();
+                requireChild(parser);
+                typeGroup.setCode(readText(parser));
+                requireChild(parser);
+                typeGroup.setName(readText(parser));
+                skip(parser);
+                work.setTypeGroup(typeGroup);
+                return true;
+            }
+            case "languagecode":
+                work.setLanguage(Work.Language.fromCode(readText(parser)));
+                return true;
+            case "state":
+                work.setState(Work.WorkState.valueOf(readText(parser)));
+                return true;
+            case "observations":
+                work.setObservations(readText(parser));
+                return true;
+            case "usealias":
+                work.setUseAlias(Boolean.valueOf(readText(parser)));
+                return true;
+            case "userauthor":
+                work.setUserAuthor(Boolean.valueOf(readText(parser)));
+                return true;
+            case "userrights":
+                work.setUserRights(Boolean.valueOf(readText(parser)));
+                return true;
+            case "useralias":
+                work.setUserAlias(readText(parser));
+                return true;
+            case "metadata":
+                readMetadata(parser, work.getMetadata());
+                return true;
+            default:
+                skip(parser);
+                return false;
+        }
+    }
+
+    private List<Link> readLinks(XmlPullParser parser) throws XmlPullParserException, IOException {
+        List<Link> links = new ArrayList<Link>();
+        while (nextChild(parser)) {
+            Link link = new Link();
+            link.setName(parser.getAttributeValue(null, "name"));
+            link.setType(Link.Type.valueOf(parser.getAttributeValue(null, "type")));
+            URL url = readUrl(parser);
+            link.setUrl(url);
+            if (url != null) {
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    private void readRelations(XmlPullParser parser, Work work) throws XmlPullParserException, IOException {
+        while (nextChild(parser)) {
+            RelationType relationType = RelationType.valueOf(parser.getAttributeValue(null, "type"));
+            List<Work> relatedWorks = new ArrayList<Work>();
+            while (nextChild(parser)) {
+                Work related = new Work();
+                related.setTitle(parser.getAttributeValue(null, "name"));
+                related.setCode(parser.getAttributeValue(null, "code"));
+                relatedWorks.add(related);
+                skip(parser);
+            }
+            work.setRelations(relationType, relatedWorks);
+        }
+    }
+
+    private List<User> readUsers(XmlPullParser parser) throws XmlPullParserException, IOException {
+        List<User> users = new ArrayList<User>();
+        while (nextChild(parser)) {
+            User user = new User();
+            requireChild(parser);
+            user.setCode(readText(parser));
+            requireChild(parser);
+            user.setName(readText(parser));
+            while (nextChild(parser)) {
+                String node = parser.getName();
+                if (node.equals("human-url")) {
+                    user.setProfileUrl(readUrl(parser));
+                } else if (node.equals("image")) {
+                    user.setThumbnailUrl(readUrl(parser));
+                } else {
+                    skip(parser);
+                }
+            }
+            users.add(user);
+        }
+        return users;
+    }
+
+    private License readLicense(XmlPullParser parser) throws XmlPullParserException, IOException {
+        if (!nextChild(parser)) {
+            return null;
+        }
+        License license = License.fromCode(readText(parser));
+        requireChild(parser);
+        license.setName(readText(parser));
+        requireChild(parser);
+        license.setShortName(readText(parser));
+        // Optional elements, in order: endDate, human-url (or url), jurisdiction and features.
+        // As in LicenseConverter anything out of that order ends the license.
+        int stage = 0;
+        while (nextChild(parser)) {
+            String node = parser.getName();
+            if (stage < 1 && node.equals("endDate")) {
+                license.setEndDate(AbstractModelConverter.parseDate(readText(parser)));
+                stage = 1;
+            } else if (stage < 2 && (node.equals("human-url") || node.equals("url"))) { // API naming inconsistency
+                license.setUrl(readUrl(parser));
+                stage = 2;
+            } else if (stage < 3 && node.equals("jurisdiction")) {
+                Country jurisdiction = new Country();
+                jurisdiction.setCode(readText(parser));
+                license.setJurisdiction(jurisdiction);
+                stage = 3;
+            } else if (stage < 4 && node.equals("features")) {
+                readFeatures(parser, license);
+                stage = 4;
+            } else {
+                skip(parser);
+                stage = 4;
+            }
+            if (stage == 4) {
+                skip(parser);
+                break;
+            }
+        }
+        return license;
+    }
+
+    private void readFeatures(XmlPullParser parser, License license) throws XmlPullParserException, IOException {
+        while (nextChild(parser)) {
+            String feature = parser.getName().toUpperCase();
+            String value = readText(parser);
+            try {
+                license.getFeatures().put(License.Feature.valueOf(feature), License.FeatureValue.valueOf(value));
+            } catch (Exception ex) {
+                log.error("bad license feature " + feature + ":" + value, ex);
+            }
+        }
+    }
+
+    private void readMetadata(XmlPullParser parser, Metadata metadata) throws XmlPullParserException, IOException {
+        for (int i = 0, count = parser.getAttributeCount(); i < count; i++) {
+            String namespaceDeclaration = parser.getAttributeName(i);
+            if (namespaceDeclaration.startsWith("xmlns:")) {
+                metadata.addNamespace(namespaceDeclaration.substring(6), parser.getAttributeValue(i));
+            }
+        }
+        while (nextChild(parser)) {
+            String propertyNS = parser.getAttributeValue(null, "property");
+            String[] namespaceParts = propertyNS.split(":");
+            Metadata.Entry entry = new Metadata.Entry(namespaceParts[0], namespaceParts[1], null);
+            for (int i = 0, count = parser.getAttributeCount(); i < count; i++) {
+                String attrName = parser.getAttributeName(i);
+                if ("property".equals(attrName)) {
+                    continue;
+                }
+                entry.getAttributes().put(attrName, parser.getAttributeValue(i));
+            }
+            entry.setValue(readText(parser));
+            metadata.add(entry);
+        }
+    }
+
+    private Date readRequiredDate(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String node = parser.getName();
+        String value = readText(parser);
+        Date date = AbstractModelConverter.parseDate(value);
+        if (date == null) {
+            throw new XmlPullParserException("bad " + node + " " + value, parser, null);
+        }
+        return date;
+    }
+
+    private URL readUrl(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String node = parser.getName();
+        return AbstractModelConverter.parseUrl(readText(parser), node);
+    }
+
+    /**
+     * Moves to the next child start tag, which must exist
+     * @param parser parser positioned at the element start tag or at the end tag of a child
+     */
+    static void requireChild(XmlPullParser parser) throws XmlPullParserException, IOException {
+        if (!nextChild(parser)) {
+            throw new XmlPullParserException("missing child element of " + parser.getName(), parser, null);
+        }
+    }
+
+    /**
+     * Moves to the next child start tag of the current element
+     * @param parser parser positioned at the element start tag or at the end tag of a child
+     * @return <code>true</code> if positioned at a child start tag,
+     * <code>false</code> if positioned at the element end tag
+     */
+    static boolean nextChild(XmlPullParser parser) throws XmlPullParserException, IOException {
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.START_TAG) {
+                return true;
+            }
+            if (event == XmlPullParser.END_TAG) {
+                return false;
+            }
+            if (event == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("unexpected end of document", parser, null);
+            }
+        }
+    }
+
+    /**
+     * Reads the element text up to its end tag, an element with children yields the text
+     * before its first child
+     * @param parser parser positioned at the element start tag
+     * @return element text, empty if none
+     */
+    static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String text = null;
+        StringBuilder buffer = null;
+        int event;
+        while ((event = parser.next()) == XmlPullParser.TEXT) {
+            if (text == null) {
+                text = parser.getText();
+            } else {
+                if (buffer == null) {
+                    buffer = new StringBuilder(text);
+                }
+                buffer.append(parser.getText());
+            }
+        }
+        if (event == XmlPullParser.START_TAG) {
+            // Skip the child, then the rest of the element
+            skip(parser);
+            skip(parser);
+        }
+        if (buffer != null) {
+            return buffer.toString();
+        }
+        return text == null ? "" : text;
+    }
+
+    /**
+     * Skips to the end tag of the current element
+     * @param parser parser positioned at the element start tag or at the end tag of a child
+     */
+    static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        while (nextChild(parser)) {
+            skip(parser);
+        }
+    }
+}
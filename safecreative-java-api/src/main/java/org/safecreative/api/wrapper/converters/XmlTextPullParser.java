@@ -0,0 +1,75 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper.converters;
+
+import java.io.Reader;
+import java.io.StringReader;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * xpp3 parser keeping its input text when read from a string, reporting where elements
+ * start and end in it so decoders can keep slices of the text instead of decoding them.
+ */
+public class XmlTextPullParser extends MXParser {
+
+    private String inputText;
+
+    /**
+     * Sets a string input, available through {@link #getInputText()}
+     * @param text xml text
+     */
+    public void setInput(String text) throws XmlPullParserException {
+        super.setInput(text == null ? null : new StringReader(text));
+        this.inputText = text;
+    }
+
+    @Override
+    public void setInput(Reader in) throws XmlPullParserException {
+        super.setInput(in);
+        this.inputText = null;
+    }
+
+    /**
+     * @return input text or <code>null</code> if reading from a reader
+     */
+    public String getInputText() {
+        return inputText;
+    }
+
+    /**
+     * @return offset within the input of the current start tag
+     */
+    public int getStartTagOffset() {
+        return bufAbsoluteStart + posStart;
+    }
+
+    /**
+     * @return offset within the input following the current end tag
+     */
+    public int getEndTagOffset() {
+        return bufAbsoluteStart + pos;
+    }
+}
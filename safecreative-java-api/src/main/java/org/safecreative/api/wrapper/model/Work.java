@@ -27,11 +27,15 @@ package org.safecreative.api.wrapper.model;
 import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a work
@@ -46,6 +50,74 @@ public class Work implements Serializable{
     public enum WorkState {
 		PROCESSING, PRE_REGISTERED, REGISTERED, ARCHIVED
 	}
+    /**
+     * Work fields, as api response elements, used to project work decoding
+     */
+    public enum Field {
+        CODE("code"), TITLE("title"), ENTRY_DATE("entrydate"), UPDATE_DATE("updatedate"),
+        EXCERPT("excerpt"), TAGS("tags"), THUMBNAIL("thumbnail"), PREVIEW("preview"),
+        MIME_TYPE("mimetype"), LINKS("links"), RELATIONS("relations"), AUTHORS("authors"),
+        RIGHT_HOLDERS("rights-holders"), INFORMERS("informers"), LICENSE("license"),
+        HUMAN_URL("human-url"), API_URL("machine-url"), ALLOW_DOWNLOAD("allowdownload"),
+        ALLOW_PREVIEW("allowpreview"), ALLOW_EVALUATION("allowevaluation"),
+        REGISTRY_PUBLIC("registrypublic"), ALLOW_SALE("allowsale"), ALLOW_LICENSING("allowlicensing"),
+        TYPE("worktype"), TYPE_GROUP("worktypegroup"), LANGUAGE("languagecode"), STATE("state"),
+        OBSERVATIONS("observations"), USE_ALIAS("usealias"), USER_AUTHOR("userauthor"),
+        USER_RIGHTS("userrights"), USER_ALIAS("useralias"), METADATA("metadata");
+
+        private static final Map<String, Field> elements = new HashMap<String, Field>();
+        static {
+            for (Field field : values()) {
+                elements.put(field.elementName, field);
+            }
+        }
+        private final String elementName;
+
+        private Field(String elementName) {
+            this.elementName = elementName;
+        }
+
+        /**
+         * @return api response element name
+         */
+        public String getElementName() {
+            return elementName;
+        }
+
+        /**
+         * @param elementName api response element name
+         * @return field or <code>null</code> if unknown
+         */
+        public static Field fromElementName(String elementName) {
+            return elements.get(elementName);
+        }
+
+        /**
+         * @param fields fields to decode, <code>null</code> for every field
+         * @return immutable projection copy, <code>null</code> for every field
+         */
+        public static Set<Field> projection(Collection<Field> fields) {
+            if (fields == null) {
+                return null;
+            }
+            EnumSet<Field> projection = EnumSet.noneOf(Field.class);
+            projection.addAll(fields);
+            return Collections.unmodifiableSet(projection);
+        }
+
+        /**
+         * @param fields projection, <code>null</code> for every field
+         * @param elementName api response element name
+         * @return <code>true</code> if the projection includes the element
+         */
+        public static boolean isProjected(Set<Field> fields, String elementName) {
+            if (fields == null) {
+                return true;
+            }
+            Field field = elements.get(elementName);
+            return field != null && fields.contains(field);
+        }
+    }
     private String code;
     private String title;
     private Date entryDate;
@@ -712,12 +784,12 @@ public class Work implements Serializable{
         if (this == o) {
             return true;
         }
-        if (o == null || this.getClass() != o.getClass()) {
+        if (!(o instanceof Work)) {
             return false;
         }
 
         Work other = (Work) o;
-        return this.code.equals(other.code);
+        return this.code == null ? other.code == null : this.code.equals(other.code);
     }
 
     @Override
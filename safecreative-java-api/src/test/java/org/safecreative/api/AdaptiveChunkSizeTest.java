@@ -0,0 +1,84 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * AdaptiveChunkSize tests
+ */
+public class AdaptiveChunkSizeTest {
+
+    private static final int MIN = 16 * 1024;
+    private static final int MAX = 1024 * 1024;
+
+    @Test
+    public void testInitialSizeClamped() {
+        assertEquals(MIN, new AdaptiveChunkSize(1, MIN, MAX).getSize());
+        assertEquals(MAX, new AdaptiveChunkSize(Integer.MAX_VALUE, MIN, MAX).getSize());
+        assertEquals(50 * 1024, new AdaptiveChunkSize(50 * 1024, MIN, MAX).getSize());
+    }
+
+    @Test
+    public void testGrowsOnFastChunks() {
+        AdaptiveChunkSize sizer = new AdaptiveChunkSize(50 * 1024, MIN, MAX);
+        // Fast chunk: at most doubles per measure
+        sizer.update(50 * 1024, 10);
+        assertEquals(100 * 1024, sizer.getSize());
+        sizer.update(100 * 1024, 10);
+        assertEquals(200 * 1024, sizer.getSize());
+        // Clamped at max
+        for (int i = 0; i < 10; i++) {
+            sizer.update(sizer.getSize(), 1);
+        }
+        assertEquals(MAX, sizer.getSize());
+    }
+
+    @Test
+    public void testShrinksOnSlowChunks() {
+        AdaptiveChunkSize sizer = new AdaptiveChunkSize(512 * 1024, MIN, MAX);
+        // Slow chunk: at most halves per measure
+        sizer.update(512 * 1024, 60 * 1000);
+        assertEquals(256 * 1024, sizer.getSize());
+        // Clamped at min
+        for (int i = 0; i < 10; i++) {
+            sizer.update(sizer.getSize(), 60 * 1000);
+        }
+        assertEquals(MIN, sizer.getSize());
+    }
+
+    @Test
+    public void testSteadyThroughput() {
+        AdaptiveChunkSize sizer = new AdaptiveChunkSize(MIN, MIN, MAX);
+        // 200 bytes per millisecond settles on one target period worth of bytes
+        for (int i = 0; i < 20; i++) {
+            int size = sizer.getSize();
+            sizer.update(size, size / 200);
+        }
+        long expected = 200 * AdaptiveChunkSize.TARGET_CHUNK_MILLIS;
+        assertTrue(sizer.getSize() + "", Math.abs(sizer.getSize() - expected) < expected / 20);
+    }
+}
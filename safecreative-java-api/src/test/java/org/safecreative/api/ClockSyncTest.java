@@ -0,0 +1,136 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * ClockSync tests
+ */
+public class ClockSyncTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static String ztime(long offset) {
+        return "<ztime>" + (System.currentTimeMillis() + offset) + "</ztime>";
+    }
+
+    @Test
+    public void testSyncOffset() {
+        SafeCreativeAPI api = new StubTransport(params -> ztime(HOUR)).createApi();
+        ClockSync clock = api.getClockSync();
+        assertFalse(clock.isSynced());
+        clock.sync();
+        assertTrue(clock.isSynced());
+        assertTrue(Math.abs(clock.getOffset() - HOUR) < 1000);
+        assertTrue(Math.abs(clock.currentTimeMillis() - System.currentTimeMillis() - HOUR) < 1000);
+    }
+
+    @Test
+    public void testFirstReadWaitsForFirstSync() {
+        SafeCreativeAPI api = new StubTransport(params -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            return ztime(HOUR);
+        }).createApi();
+        ClockSync clock = new ClockSync(api);
+        clock.start();
+        try {
+            assertTrue(clock.currentTimeMillis() - System.currentTimeMillis() > HOUR - 1000);
+        } finally {
+            clock.stop();
+        }
+    }
+
+    @Test
+    public void testFirstReadTimeout() {
+        final CountDownLatch release = new CountDownLatch(1);
+        SafeCreativeAPI api = new StubTransport(params -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            return ztime(HOUR);
+        }).createApi();
+        ClockSync clock = new ClockSync(api);
+        clock.setFirstSyncTimeout(100);
+        clock.start();
+        try {
+            long start = System.nanoTime();
+            assertTrue(Math.abs(clock.currentTimeMillis() - System.currentTimeMillis()) < 1000);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+            assertFalse(clock.isSynced());
+            // Only the first read waits
+            start = System.nanoTime();
+            clock.currentTimeMillis();
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        } finally {
+            release.countDown();
+            clock.stop();
+        }
+    }
+
+    @Test
+    public void testFailedSyncRetried() {
+        final AtomicInteger calls = new AtomicInteger();
+        SafeCreativeAPI api = new StubTransport(params -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw new IOException("connection refused");
+            }
+            return ztime(HOUR);
+        }).createApi();
+        ClockSync clock = new ClockSync(api);
+        clock.setFirstSyncTimeout(0);
+        clock.setRetryDelay(10);
+        clock.start();
+        try {
+            assertTrue(clock.awaitSync(5000));
+            assertEquals(3, calls.get());
+            assertTrue(Math.abs(clock.getOffset() - HOUR) < 1000);
+        } finally {
+            clock.stop();
+        }
+    }
+
+    @Test
+    public void testApiShutdownStopsClock() {
+        SafeCreativeAPI api = new StubTransport(params -> ztime(0)).createApi();
+        ClockSync clock = new ClockSync(api);
+        clock.start();
+        api.setClockSync(clock);
+        assertTrue(clock.isStarted());
+        api.shutdown();
+        assertFalse(clock.isStarted());
+    }
+}
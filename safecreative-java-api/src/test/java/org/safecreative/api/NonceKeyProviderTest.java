@@ -0,0 +1,191 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.safecreative.api.transport.Transport;
+import static org.junit.Assert.*;
+
+/**
+ * NonceKeyProvider tests, over a stub server whose nonce key changes on each accepted call
+ */
+public class NonceKeyProviderTest {
+
+    /**
+     * Runs prefetches when told to
+     */
+    private static class QueuedExecutor implements Executor {
+        private final List<Runnable> queue = new ArrayList<Runnable>();
+
+        public synchronized void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        synchronized void runAll() {
+            for (Runnable command : queue) {
+                command.run();
+            }
+            queue.clear();
+        }
+    }
+
+    private static class NonceServer implements StubTransport.Responder {
+        private final AtomicInteger nonceKey = new AtomicInteger(1);
+        private volatile boolean rejectAll;
+        private volatile String error;
+
+        public String respond(Map<String, String> params) {
+            if ("authkey.state".equals(params.get("component"))) {
+                return "<authkeystate><noncekey>" + nonceKey.get() + "</noncekey></authkeystate>";
+            }
+            if (rejectAll || !String.valueOf(nonceKey.get()).equals(params.get("noncekey"))) {
+                return "<error><errorId>InvalidNonceKey</errorId></error>";
+            }
+            if (error != null) {
+                return "<error><errorId>" + error + "</errorId></error>";
+            }
+            nonceKey.incrementAndGet();
+            return "<restvalueresponse><state>ok</state></restvalueresponse>";
+        }
+    }
+
+    private static String call(SafeCreativeAPI api) {
+        return api.callSigned(api.createParams("component", "test"), true, true);
+    }
+
+    @Test
+    public void testTakeAndRelease() {
+        StubTransport transport = new StubTransport(new NonceServer());
+        SafeCreativeAPI api = transport.createApi();
+        QueuedExecutor executor = new QueuedExecutor();
+        NonceKeyProvider provider = new NonceKeyProvider(api, executor);
+        // Miss reads the nonce key from the server
+        assertEquals("1", provider.take("authkey"));
+        assertEquals(1, transport.count("authkey.state"));
+        // Rejected call leaves no cached key
+        provider.release("authkey", false);
+        executor.runAll();
+        assertNull(provider.takeCached("authkey"));
+        // Accepted call prefetches the next key, given once
+        provider.release("authkey", true);
+        executor.runAll();
+        assertEquals(2, transport.count("authkey.state"));
+        assertEquals("1", provider.take("authkey"));
+        assertNull(provider.takeCached("authkey"));
+    }
+
+    @Test
+    public void testPrefetchDroppedAfterTake() {
+        StubTransport transport = new StubTransport(new NonceServer());
+        SafeCreativeAPI api = transport.createApi();
+        QueuedExecutor executor = new QueuedExecutor();
+        NonceKeyProvider provider = new NonceKeyProvider(api, executor);
+        provider.release("authkey", true);
+        // A take before the prefetch runs reads the same server nonce key,
+        // so the prefetched one would be already used
+        assertEquals("1", provider.take("authkey"));
+        executor.runAll();
+        assertNull(provider.takeCached("authkey"));
+        // Invalidating also drops prefetches in flight
+        provider.release("authkey", true);
+        provider.invalidate("authkey");
+        executor.runAll();
+        assertNull(provider.takeCached("authkey"));
+    }
+
+    @Test
+    public void testSignedCallsUsePrefetchedKeys() {
+        StubTransport transport = new StubTransport(new NonceServer());
+        SafeCreativeAPI api = transport.createApi();
+        api.setNonceKeyProvider(new NonceKeyProvider(api, Runnable::run));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(api.isError(call(api)));
+        }
+        // One read before the first call, then one prefetch after each call
+        assertEquals(4, transport.count("authkey.state"));
+        assertEquals(3, transport.count("test"));
+    }
+
+    @Test
+    public void testStaleCachedKeyRetried() {
+        NonceServer server = new NonceServer();
+        StubTransport transport = new StubTransport(server);
+        SafeCreativeAPI api = transport.createApi();
+        api.setNonceKeyProvider(new NonceKeyProvider(api, Runnable::run));
+        assertFalse(api.isError(call(api)));
+        // Nonce key used elsewhere, the cached one is stale
+        server.nonceKey.incrementAndGet();
+        assertFalse(api.isError(call(api)));
+        assertEquals(3, transport.count("test"));
+        // A rejected fresh nonce key is not retried
+        api.getNonceKeyProvider().clear();
+        server.rejectAll = true;
+        assertTrue(api.isError(call(api)));
+        assertEquals(4, transport.count("test"));
+    }
+
+    /**
+     * Errors other than a rejected nonce key are not retried, the call may not be idempotent
+     */
+    @Test
+    public void testOtherErrorsNotRetried() {
+        NonceServer server = new NonceServer();
+        StubTransport transport = new StubTransport(server);
+        final SafeCreativeAPI api = transport.createApi();
+        api.setNonceKeyProvider(new NonceKeyProvider(api, Runnable::run));
+        assertFalse(api.isError(call(api)));
+        server.error = "InvalidParameter";
+        assertEquals("InvalidParameter", api.getErrorCode(call(api)));
+        assertEquals(2, transport.count("test"));
+        // Same for errors thrown by a response handler
+        server.error = null;
+        assertFalse(api.isError(call(api)));
+        server.error = SafeCreativeAPI.INVALID_TIME_ERROR;
+        try {
+            api.callSigned("http://localhost", api.createParams("component", "test"), "privateauthkey", true, true, false,
+                    new Transport.ResponseHandler<String>() {
+                        public String handle(InputStream in) throws IOException {
+                            String response = api.readString(in);
+                            ResponseStatus status = api.getResponseStatus(response);
+                            if (status.isError()) {
+                                throw new IOException(new ApiException(status.getCode(), status.getMessage()));
+                            }
+                            return response;
+                        }
+                    });
+            fail("Error not thrown");
+        } catch (RuntimeException e) {
+            assertEquals(SafeCreativeAPI.INVALID_TIME_ERROR, ((ApiException) e.getCause()).getErrorCode());
+        }
+        assertEquals(4, transport.count("test"));
+    }
+}
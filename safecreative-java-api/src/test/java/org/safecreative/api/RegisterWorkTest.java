@@ -0,0 +1,177 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.File;
+import java.util.Map;
+import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * RegisterWork api upload tests
+ */
+public class RegisterWorkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String READY = "<restvalueresponse><state>ready</state></restvalueresponse>";
+    private static final String CONTINUE = "<workuploadchunk><state>continue</state></workuploadchunk>";
+    private static final String COMMITTED = "<workuploadcommit><uploadticket>ticket</uploadticket></workuploadcommit>";
+
+    private static String respond(Map<String, String> params, long failOffset) {
+        return respond(params, failOffset, "ChunkError");
+    }
+
+    private static String respond(Map<String, String> params, long failOffset, String errorCode) {
+        String component = params.get("component");
+        if ("work.upload.begin".equals(component)) {
+            return READY;
+        }
+        if ("work.upload.chunk".equals(component)) {
+            if (Long.parseLong(params.get("offset")) == failOffset) {
+                return "<error><errorId>" + errorCode + "</errorId><errorMessage>bad chunk</errorMessage></error>";
+            }
+            return CONTINUE;
+        }
+        return COMMITTED;
+    }
+
+    private static RegisterWork pipelined(SafeCreativeAPI api) {
+        RegisterWork registerWork = new RegisterWork(api);
+        registerWork.setPostUpload(false);
+        registerWork.setChunkSize(RegisterWork.MIN_CHUNK_SIZE);
+        registerWork.setUploadWindow(3);
+        return registerWork;
+    }
+
+    @Test
+    public void testPipelinedUpload() throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, -1));
+        byte[] data = new byte[RegisterWork.MIN_CHUNK_SIZE * 5 + 10];
+        String ticket = pipelined(transport.createApi()).uploadFile("http://localhost", "id",
+                new ByteArrayPartSource("work.bin", data), null);
+        assertEquals("ticket", ticket);
+        assertEquals(6, transport.count("work.upload.chunk"));
+        assertEquals(1, transport.count("work.upload.commit"));
+    }
+
+    @Test
+    public void testPipelinedUploadFailedChunk() throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, RegisterWork.MIN_CHUNK_SIZE * 2));
+        byte[] data = new byte[RegisterWork.MIN_CHUNK_SIZE * 5];
+        try {
+            pipelined(transport.createApi()).uploadFile("http://localhost", "id", new ByteArrayPartSource("work.bin", data), null);
+            fail("failed chunk not thrown");
+        } catch (ApiException ex) {
+            assertEquals("ChunkError", ex.getErrorCode());
+        }
+        assertEquals(0, transport.count("work.upload.commit"));
+    }
+
+    @Test
+    public void testPipelinedUploadChunkTaskError() throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, -1));
+        RegisterWork registerWork = pipelined(transport.createApi());
+        final AssertionError error = new AssertionError("listener");
+        registerWork.setUploadProgressListener((percent, uploaded, total) -> {
+            if (uploaded == RegisterWork.MIN_CHUNK_SIZE * 2) {
+                throw error;
+            }
+        });
+        byte[] data = new byte[RegisterWork.MIN_CHUNK_SIZE * 4];
+        try {
+            registerWork.uploadFile("http://localhost", "id", new ByteArrayPartSource("work.bin", data), null);
+            fail("chunk task error not thrown");
+        } catch (RuntimeException ex) {
+            assertSame(error, ex.getCause());
+        }
+        assertEquals(0, transport.count("work.upload.commit"));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, -1));
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        PartSource source = new ByteArrayPartSource("work.bin", new byte[RegisterWork.MIN_CHUNK_SIZE * 3]);
+        UploadSession session = UploadSession.create(checkpoint, "http://localhost", "id", source);
+        session.acknowledge(0, RegisterWork.MIN_CHUNK_SIZE);
+        RegisterWork registerWork = pipelined(transport.createApi());
+        registerWork.setCheckpointFile(checkpoint);
+        assertEquals("ticket", registerWork.uploadFile("http://localhost", "id", source, null));
+        assertEquals(0, transport.count("work.upload.begin"));
+        assertEquals(2, transport.count("work.upload.chunk"));
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void testChangedFileNotResumed() throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, -1));
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        byte[] data = new byte[RegisterWork.MIN_CHUNK_SIZE * 3];
+        UploadSession session = UploadSession.create(checkpoint, "http://localhost", "id", new ByteArrayPartSource("work.bin", data));
+        session.acknowledge(0, RegisterWork.MIN_CHUNK_SIZE);
+        data[0] = 1;
+        RegisterWork registerWork = pipelined(transport.createApi());
+        registerWork.setCheckpointFile(checkpoint);
+        registerWork.uploadFile("http://localhost", "id", new ByteArrayPartSource("work.bin", data), null);
+        assertEquals(1, transport.count("work.upload.begin"));
+        assertEquals(3, transport.count("work.upload.chunk"));
+    }
+
+    @Test
+    public void testRejectedSessionDiscarded() throws Exception {
+        assertFalse(uploadRejected(RegisterWork.UPLOAD_EXPIRED_ERROR).exists());
+        // Other errors, even transient ones, keep the checkpoint
+        assertTrue(uploadRejected("ChunkError").exists());
+        assertTrue(uploadRejected(SafeCreativeAPI.INVALID_TIME_ERROR).exists());
+    }
+
+    /**
+     * Resumes an upload whose next chunk is rejected
+     * @return checkpoint file
+     */
+    private File uploadRejected(final String errorCode) throws Exception {
+        StubTransport transport = new StubTransport(params -> respond(params, RegisterWork.MIN_CHUNK_SIZE, errorCode));
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        PartSource source = new ByteArrayPartSource("work.bin", new byte[RegisterWork.MIN_CHUNK_SIZE * 3]);
+        UploadSession session = UploadSession.create(checkpoint, "http://localhost", "id", source);
+        session.acknowledge(0, RegisterWork.MIN_CHUNK_SIZE);
+        RegisterWork registerWork = pipelined(transport.createApi());
+        registerWork.setCheckpointFile(checkpoint);
+        try {
+            registerWork.uploadFile("http://localhost", "id", source, null);
+            fail("rejected session not thrown");
+        } catch (ApiException ex) {
+            assertEquals(errorCode, ex.getErrorCode());
+        }
+        assertEquals(0, transport.count("work.upload.begin"));
+        return checkpoint;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * RequestParams tests
+ */
+public class RequestParamsTest {
+
+    @Test
+    public void testSortedInsertion() {
+        RequestParams params = new RequestParams("component", "work.get", "code", 1234, "authkey", null);
+        assertEquals(Arrays.asList("authkey", "code", "component"), new ArrayList<String>(params.keySet()));
+        assertEquals("1234", params.get("code"));
+        assertTrue(params.containsKey("authkey"));
+        assertNull(params.get("authkey"));
+        assertEquals("1234", params.put("code", "5678"));
+        assertEquals(3, params.size());
+        assertEquals("5678", params.getValue(1));
+        assertEquals("work.get", params.remove("component"));
+        assertEquals(2, params.size());
+
+        Iterator<Map.Entry<String, String>> iterator = params.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals("code", params.getKey(0));
+
+        params.clear();
+        assertTrue(params.isEmpty());
+        params.add("b", "2", "a", "1");
+        assertEquals("a", params.getKey(0));
+    }
+
+    @Test
+    public void testMapContract() {
+        Random random = new Random(7);
+        RequestParams params = new RequestParams();
+        Map<String, String> reference = new HashMap<String, String>();
+        for (int i = 0; i < 2000; i++) {
+            String key = "k" + random.nextInt(60);
+            if (random.nextInt(4) == 0) {
+                assertEquals(reference.remove(key), params.remove(key));
+            } else {
+                String value = String.valueOf(random.nextInt());
+                assertEquals(reference.put(key, value), params.put(key, value));
+            }
+            assertEquals(reference.size(), params.size());
+        }
+        assertEquals(reference, params);
+        assertEquals(reference.hashCode(), params.hashCode());
+        for (int i = 1; i < params.size(); i++) {
+            assertTrue(params.getKey(i - 1).compareTo(params.getKey(i)) < 0);
+        }
+        assertEquals(RequestSigner.sign(reference, "key"), RequestSigner.sign(params, "key"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.safecreative.api.util.Base64;
+import org.safecreative.api.util.Digest;
+import static org.junit.Assert.*;
+
+/**
+ * RequestSigner tests
+ */
+public class RequestSignerTest {
+
+    private static final String[] SAMPLES = {
+        "", "plain", "with space", "a+b=c&d", "*-._~!'()", "\u00f1and\u00fa", "\u20ac100",
+        "\ud83d\ude00 smile", "bad\ud800surrogate", "\udc00", "line\r\nbreak", "%41"
+    };
+
+    @Test
+    public void testSign() throws Exception {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("component", "work.get");
+        params.put("code", "1004226079740");
+        params.put("ztime", null);
+        for (int i = 0; i < SAMPLES.length; i++) {
+            params.put("p" + i, SAMPLES[i]);
+        }
+        assertEquals(reference(params, "privatekey\u00e1"), RequestSigner.sign(params, "privatekey\u00e1"));
+    }
+
+    @Test
+    public void testSignRandom() throws Exception {
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            Map<String, String> params = new HashMap<String, String>();
+            int size = 1 + random.nextInt(40);
+            for (int i = 0; i < size; i++) {
+                StringBuilder value = new StringBuilder();
+                int length = random.nextInt(n < 190 ? 20 : 2000);
+                for (int j = 0; j < length; j++) {
+                    value.append((char) (random.nextBoolean() ? 32 + random.nextInt(96) : random.nextInt(0x10000)));
+                }
+                params.put("key" + random.nextInt(100), value.toString());
+            }
+            assertEquals(reference(params, "key"), RequestSigner.sign(params, "key"));
+        }
+    }
+
+    @Test
+    public void testSignData() throws Exception {
+        Random random = new Random(7);
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        for (String dataParam : new String[]{"a", "data", "ztime", "zz", "code"}) {
+            for (int length : new int[]{0, 1, 57, 4990}) {
+                Map<String, String> params = new RequestParams("component", "work.upload.chunk", "code", "x y",
+                        "ztime", "1", "p", SAMPLES[5]);
+                RequestSigner.SignedData body = RequestSigner.signData(params, dataParam, data, 5, length, "key\u00e1");
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                body.writeTo(out);
+                params.put(dataParam, Base64.encodeBytes(data, 5, length));
+                String expected = RequestSigner.sign(params, "key\u00e1");
+                assertEquals(dataParam + " " + length, expected, out.toString("US-ASCII"));
+                assertEquals(out.size(), body.getContentLength());
+            }
+        }
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("b", SAMPLES[3]);
+        params.put("a", null);
+        params.put("c", SAMPLES[7]);
+        assertEquals("b=" + URLEncoder.encode(SAMPLES[3], "UTF-8") + "&a=&c=" + URLEncoder.encode(SAMPLES[7], "UTF-8"),
+                RequestSigner.encode(params));
+    }
+
+    private static String reference(Map<String, String> params, String privatekey) throws Exception {
+        StringBuilder unencoded = new StringBuilder();
+        StringBuilder encoded = new StringBuilder();
+        List<String> keys = new ArrayList<String>(params.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            String value = params.get(key);
+            if (value != null) {
+                unencoded.append("&" + key + "=" + value);
+                encoded.append("&" + key + "=" + URLEncoder.encode(value, "UTF-8"));
+            }
+        }
+        return encoded.substring(1) + "&signature=" + Digest.getHexDigest(privatekey + "&" + unencoded.substring(1), Digest.SHA1);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * ResponseStatus tests
+ */
+public class ResponseStatusTest {
+
+    @Test
+    public void testSuccess() {
+        assertFalse(ResponseStatus.classify(null).isError());
+        assertFalse(ResponseStatus.classify("").isError());
+        assertFalse(ResponseStatus.classify("ok").isError());
+        ResponseStatus status = ResponseStatus.classify("<?xml version=\"1.0\"?>\n<restvalueresponse><state>ready</state></restvalueresponse>");
+        assertEquals(ResponseStatus.Kind.SUCCESS, status.getKind());
+        assertNull(status.getCode());
+        // Error elements below the root do not make an error
+        assertFalse(ResponseStatus.classify("<works><error><errorId>X</errorId></error></works>").isError());
+        // Neither does an error without id, nested ids do not count
+        assertFalse(ResponseStatus.classify("<error><errorMessage>m</errorMessage></error>").isError());
+        assertFalse(ResponseStatus.classify("<error><a><errorId>X</errorId></a></error>").isError());
+        assertFalse(ResponseStatus.classify("<error/>").isError());
+        assertFalse(ResponseStatus.classify("<error><info/></error><errorId>X</errorId>").isError());
+        assertFalse(ResponseStatus.classify("<error><!-- unterminated").isError());
+    }
+
+    @Test
+    public void testErrorMatchesParsedResponse() {
+        String[] responses = {
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- api -->\n<error>\n  <errorId>InvalidTime</errorId>\n  <errorMessage>Bad &lt;time&gt; &amp; &#233;</errorMessage>\n</error>",
+            "<exception><exceptionId>NullPointerException</exceptionId><exceptionMessage/></exception>",
+            "<error><errorId>E1</errorId></error>",
+            "<error><errorId>E2</errorId><errorMessage><![CDATA[a <b>]]></errorMessage></error>",
+            "<error><errorId>E3</errorId><errorMessage>line\r\nbreak</errorMessage></error>",
+            // Only the first code and message children of the root count
+            "<error><details><errorId>Nested</errorId><errorMessage>nested</errorMessage></details><errorId>E4</errorId><errorMessage>m4</errorMessage></error>",
+            "<error><errorId>E5</errorId><errorId>Second</errorId><errorMessage>first</errorMessage><errorMessage>second</errorMessage></error>",
+            "<exception><cause><exceptionId/></cause><exceptionId>E6</exceptionId><!-- <exceptionId>C</exceptionId> --><?pi <exceptionId>?></exception>",
+            "<error><info/><errorId>E7</errorId></error>",
+        };
+        for (String response : responses) {
+            ResponseStatus status = ResponseStatus.classify(response);
+            ApiResponse parsed = new ApiResponse(response);
+            assertTrue(response, status.isError());
+            assertEquals(parsed.getRootName(), status.getKind().name().toLowerCase());
+            assertEquals(response, parsed.getErrorCode(), status.getCode());
+            assertEquals(response, parsed.getErrorMessage(), status.getMessage());
+        }
+    }
+}
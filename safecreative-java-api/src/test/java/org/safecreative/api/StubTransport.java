@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.safecreative.api.transport.Transport;
+
+/**
+ * Offline transport answering api requests from a responder, recording the decoded request parameters
+ */
+public class StubTransport implements Transport {
+
+    /**
+     * Builds the xml response of a request
+     */
+    public interface Responder {
+        public String respond(Map<String, String> params) throws IOException;
+    }
+
+    private final Responder responder;
+    private final List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<Map<String, String>>());
+
+    public StubTransport(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * Creates an api using this transport and a local clock, so no request leaves the test
+     * @return api
+     */
+    public SafeCreativeAPI createApi() {
+        SafeCreativeAPI api = new SafeCreativeAPI("shared", "private");
+        api.setBaseUrl("http://localhost");
+        api.setAuthKey("authkey");
+        api.setPrivateAuthKey("privateauthkey");
+        api.setTransport(this);
+        api.setClockSync(new ClockSync(api));
+        return api;
+    }
+
+    public <T> T post(String url, String contentType, byte[] body, ResponseHandler<T> handler) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        for (String pair : new String(body, SafeCreativeAPI.DEFAULT_ENCODING).split("&")) {
+            int pos = pair.indexOf('=');
+            params.put(pair.substring(0, pos), URLDecoder.decode(pair.substring(pos + 1), SafeCreativeAPI.DEFAULT_ENCODING));
+        }
+        requests.add(params);
+        String response = responder.respond(params);
+        return handler.handle(new ByteArrayInputStream(response.getBytes(SafeCreativeAPI.DEFAULT_ENCODING)));
+    }
+
+    public void shutdown() {
+    }
+
+    /**
+     * @return decoded parameters of the requests received so far
+     */
+    public List<Map<String, String>> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<Map<String, String>>(requests);
+        }
+    }
+
+    /**
+     * @return number of requests received so far for a component
+     */
+    public int count(String component) {
+        int count = 0;
+        for (Map<String, String> params : getRequests()) {
+            if (component.equals(params.get("component"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api;
+
+import java.io.File;
+import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * UploadSession tests
+ */
+public class UploadSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PartSource source(int length, int changedByte) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        if (changedByte >= 0) {
+            data[changedByte]++;
+        }
+        return new ByteArrayPartSource("work.bin", data);
+    }
+
+    @Test
+    public void testAcknowledgeOutOfOrder() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        UploadSession session = UploadSession.create(checkpoint, "http://upload", "id", source(400, -1));
+        session.acknowledge(100, 100);
+        session.acknowledge(300, 100);
+        assertEquals(0, session.getOffset());
+        assertFalse(checkpoint.exists());
+        session.acknowledge(0, 100);
+        assertEquals(200, session.getOffset());
+        assertEquals(200, UploadSession.load(checkpoint).getOffset());
+        session.acknowledge(200, 100);
+        assertEquals(400, session.getOffset());
+        assertEquals(400, UploadSession.load(checkpoint).getOffset());
+    }
+
+    @Test
+    public void testCheckpointRoundTrip() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        PartSource source = source(UploadSession.HEAD_CHECK_LENGTH + 100, -1);
+        UploadSession session = UploadSession.create(checkpoint, "http://upload", "id", source);
+        session.acknowledge(0, 50);
+        UploadSession loaded = UploadSession.load(checkpoint);
+        assertEquals("http://upload", loaded.getUploadURL());
+        assertEquals("id", loaded.getUploadID());
+        assertEquals("work.bin", loaded.getFileName());
+        assertEquals(source.getLength(), loaded.getLength());
+        assertEquals(50, loaded.getOffset());
+        assertEquals(session.getHeadDigest(), loaded.getHeadDigest());
+        assertTrue(loaded.matches(source));
+        // Changes within the checked head are detected, changes after it are not
+        assertFalse(loaded.matches(source(UploadSession.HEAD_CHECK_LENGTH + 100, 10)));
+        assertTrue(loaded.matches(source(UploadSession.HEAD_CHECK_LENGTH + 100, UploadSession.HEAD_CHECK_LENGTH)));
+        assertFalse(loaded.matches(source(UploadSession.HEAD_CHECK_LENGTH + 101, -1)));
+        loaded.delete();
+        assertFalse(checkpoint.exists());
+        assertNull(UploadSession.load(checkpoint));
+    }
+
+    @Test
+    public void testCheckpointWithoutContentCheckNotResumed() throws Exception {
+        File checkpoint = new File(folder.getRoot(), "upload.properties");
+        PartSource source = source(100, -1);
+        new UploadSession(checkpoint, "http://upload", "id", "work.bin", 100, 0, null).save();
+        assertFalse(UploadSession.load(checkpoint).matches(source));
+    }
+}
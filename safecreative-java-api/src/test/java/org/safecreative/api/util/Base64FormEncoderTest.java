@@ -0,0 +1,60 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.util;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Base64FormEncoder tests
+ */
+public class Base64FormEncoderTest {
+
+    /**
+     * Encoded output must match Base64.encodeBytes plus form url encoding
+     */
+    @Test
+    public void testEncodeMatchesBase64() throws Exception {
+        Random random = new Random(1);
+        for (int len : new int[]{0, 1, 2, 3, 56, 57, 58, 114, 1000, 50 * 1024 + 1}) {
+            byte[] data = new byte[len + 10];
+            random.nextBytes(data);
+            String base64 = Base64.encodeBytes(data, 5, len);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = Base64FormEncoder.encode(data, 5, len, false, out);
+            assertEquals("length " + len, base64, out.toString("US-ASCII"));
+            assertEquals(out.size(), written);
+
+            out.reset();
+            written = Base64FormEncoder.encode(data, 5, len, true, out);
+            assertEquals("length " + len, URLEncoder.encode(base64, "UTF-8"), out.toString("US-ASCII"));
+            assertEquals(out.size(), written);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Digest tests
+ */
+public class DigestTest {
+
+    @Test
+    public void testToHex() {
+        assertEquals("00017f80ff", Digest.toHex(new byte[]{0, 1, 127, -128, -1}));
+        assertEquals("", Digest.toHex(new byte[0]));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digest.getHexDigest("abc", Digest.SHA1));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", Digest.getHexDigest("abc", Digest.MD5));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digest.getHexDigest("abc", Digest.SHA1));
+    }
+
+    /**
+     * File digests, mapped or read, must match the stream digest
+     */
+    @Test
+    public void testFileDigest() throws Exception {
+        Random random = new Random(3);
+        for (long len : new long[]{0, 1000, Digest.MAP_THRESHOLD + 12345}) {
+            byte[] data = new byte[(int) len];
+            random.nextBytes(data);
+            File file = TestFiles.createTempFile("digest", data);
+            try {
+                for (String algorithm : new String[]{Digest.SHA1, Digest.MD5}) {
+                    assertEquals("length " + len,
+                            Digest.getHexDigest(new ByteArrayInputStream(data), algorithm),
+                            Digest.getHexDigest(file, algorithm));
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Files spanning several mapped regions, ending on a region boundary or not
+     */
+    @Test
+    public void testMappedRegions() throws Exception {
+        int regionSize = 256 * 1024;
+        for (long len : new long[]{Digest.MAP_THRESHOLD, Digest.MAP_THRESHOLD + 12345}) {
+            byte[] data = new byte[(int) len];
+            new Random(len).nextBytes(data);
+            File file = TestFiles.createTempFile("digest", data);
+            FileInputStream input = null;
+            try {
+                input = new FileInputStream(file);
+                MessageDigest digest = MessageDigest.getInstance(Digest.SHA1);
+                Digest.update(digest, input.getChannel(), regionSize);
+                assertEquals("length " + len, Digest.getHexDigest(data, Digest.SHA1), Digest.toHex(digest.digest()));
+                assertEquals(len, input.getChannel().position());
+            } finally {
+                IOHelper.closeQuietly(input);
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * A failed mapping reads the rest of the channel from the first unmapped byte
+     */
+    @Test
+    public void testMapFallback() throws Exception {
+        int regionSize = 256 * 1024;
+        byte[] data = new byte[(int) Digest.MAP_THRESHOLD + 12345];
+        new Random(5).nextBytes(data);
+        File file = TestFiles.createTempFile("digest", data);
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            FailingMapChannel channel = new FailingMapChannel(input.getChannel(), 1);
+            MessageDigest digest = MessageDigest.getInstance(Digest.SHA1);
+            Digest.update(digest, channel, regionSize);
+            assertEquals(Digest.getHexDigest(data, Digest.SHA1), Digest.toHex(digest.digest()));
+            assertEquals(2, channel.maps);
+        } finally {
+            IOHelper.closeQuietly(input);
+            file.delete();
+        }
+    }
+
+    /**
+     * File channel failing to map after a number of regions
+     */
+    private static class FailingMapChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private final int mappable;
+        int maps;
+
+        FailingMapChannel(FileChannel channel, int mappable) {
+            this.channel = channel;
+            this.mappable = mappable;
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            if (maps++ >= mappable) {
+                throw new IOException("Map failed");
+            }
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
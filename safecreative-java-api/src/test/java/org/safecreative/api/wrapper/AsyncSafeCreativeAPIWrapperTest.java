@@ -0,0 +1,110 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.safecreative.api.ApiException;
+import org.safecreative.api.StubTransport;
+import org.safecreative.api.transport.HttpClientTransport;
+import static org.junit.Assert.*;
+
+/**
+ * AsyncSafeCreativeAPIWrapper tests, over a stub server answering version calls
+ */
+public class AsyncSafeCreativeAPIWrapperTest {
+
+    private static final String VERSION = "<version>2.0</version>";
+
+    @Test
+    public void testResults() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        StubTransport transport = new StubTransport(params -> calls.incrementAndGet() == 1 ? VERSION
+                : "<error><errorId>VersionError</errorId><errorMessage>no version</errorMessage></error>");
+        AsyncSafeCreativeAPIWrapper async = new AsyncSafeCreativeAPIWrapper(new SafeCreativeAPIWrapper(transport.createApi()));
+        try {
+            assertEquals("2.0", async.getVersion().get(5, TimeUnit.SECONDS));
+            try {
+                async.getVersion().get(5, TimeUnit.SECONDS);
+                fail("Error not thrown");
+            } catch (ExecutionException ex) {
+                assertEquals("VersionError", ((ApiException) ex.getCause()).getErrorCode());
+            }
+        } finally {
+            async.shutdown();
+        }
+    }
+
+    /**
+     * The default executor runs no more calls at once than the transport connections per host
+     */
+    @Test
+    public void testDefaultExecutorBounded() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        StubTransport transport = new StubTransport(params -> {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return VERSION;
+        });
+        SafeCreativeAPIWrapper wrapper = new SafeCreativeAPIWrapper(transport.createApi());
+        int limit = HttpClientTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        assertEquals(limit, AsyncSafeCreativeAPIWrapper.getMaxConcurrentCalls(wrapper));
+        AsyncSafeCreativeAPIWrapper async = new AsyncSafeCreativeAPIWrapper(wrapper);
+        try {
+            List<CompletableFuture<String>> versions = new ArrayList<CompletableFuture<String>>();
+            for (int i = 0; i < limit * 3; i++) {
+                versions.add(async.getVersion());
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (running.get() < limit && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(limit, running.get());
+            release.countDown();
+            for (CompletableFuture<String> version : versions) {
+                assertEquals("2.0", version.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(limit, maxRunning.get());
+            assertEquals(limit * 3, transport.count("version"));
+        } finally {
+            async.shutdown();
+        }
+    }
+}
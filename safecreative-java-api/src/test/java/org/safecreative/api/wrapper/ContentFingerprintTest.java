@@ -0,0 +1,111 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Test;
+import org.safecreative.api.util.Digest;
+import org.safecreative.api.util.MD4;
+import static org.junit.Assert.*;
+
+/**
+ * ContentFingerprint tests
+ */
+public class ContentFingerprintTest {
+
+    @Test
+    public void testMD4() throws Exception {
+        assertEquals("31d6cfe0d16ae931b73c59d7e0c089c0", Digest.toHex(new MD4().digest("".getBytes("US-ASCII"))));
+        assertEquals("a448017aaf21d8525fc10ae87aa6729d", Digest.toHex(new MD4().digest("abc".getBytes("US-ASCII"))));
+        assertEquals("d9130a8164549fe818874806e1c7014b", Digest.toHex(new MD4().digest("message digest".getBytes("US-ASCII"))));
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            digits.append("1234567890");
+        }
+        MD4 md4 = new MD4();
+        byte[] data = digits.toString().getBytes("US-ASCII");
+        for (int i = 0; i < data.length; i += 7) {
+            md4.update(data, i, Math.min(7, data.length - i));
+        }
+        assertEquals("e33b4ddc9c38f2199c3e7b164fcc0536", Digest.toHex(md4.digest()));
+    }
+
+    @Test
+    public void testSinglePass() throws Exception {
+        byte[] data = new byte[200 * 1024 + 17];
+        new Random(5).nextBytes(data);
+        ContentFingerprint fingerprint = new ContentFingerprint(data.length, Arrays.asList(
+                SearchMethod.WORK_CNT_SHA1, SearchMethod.WORK_CNT_SHA512, SearchMethod.WORK_CNT_CRC32,
+                SearchMethod.WORK_CNT_BEGIN, SearchMethod.WORK_CNT_MIDDLE, SearchMethod.WORK_CNT_END,
+                SearchMethod.WORK_CNT_ED2K, SearchMethod.WORK_CNT_TORRENT_32K, SearchMethod.WORK_CNT_MD4));
+        for (int i = 0; i < data.length; i += 10000) {
+            fingerprint.update(data, i, Math.min(10000, data.length - i));
+        }
+        Map<SearchMethod, String> values = fingerprint.getValues();
+
+        assertEquals(Digest.getHexDigest(data, Digest.SHA1), values.get(SearchMethod.WORK_CNT_SHA1));
+        assertEquals(Digest.getHexDigest(data, "SHA-512"), values.get(SearchMethod.WORK_CNT_SHA512));
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        assertEquals(String.format("00000000%08x", crc.getValue()), values.get(SearchMethod.WORK_CNT_CRC32));
+        int part = ContentFingerprint.PART_SIZE;
+        int middle = (data.length - part) / 2;
+        assertEquals(sha1(data, 0, part), values.get(SearchMethod.WORK_CNT_BEGIN));
+        assertEquals(sha1(data, middle, part), values.get(SearchMethod.WORK_CNT_MIDDLE));
+        assertEquals(sha1(data, data.length - part, part), values.get(SearchMethod.WORK_CNT_END));
+        assertEquals(values.get(SearchMethod.WORK_CNT_MD4), values.get(SearchMethod.WORK_CNT_ED2K));
+
+        ByteArrayOutputStream pieces = new ByteArrayOutputStream();
+        MessageDigest sha1 = MessageDigest.getInstance(Digest.SHA1);
+        for (int i = 0; i < data.length; i += 32768) {
+            sha1.update(data, i, Math.min(32768, data.length - i));
+            pieces.write(sha1.digest());
+        }
+        assertEquals(Digest.getHexDigest(pieces.toByteArray(), Digest.SHA1), values.get(SearchMethod.WORK_CNT_TORRENT_32K));
+    }
+
+    @Test
+    public void testSmallContent() throws Exception {
+        byte[] data = "small".getBytes("US-ASCII");
+        Map<SearchMethod, String> values = ContentFingerprint.compute(new ByteArrayInputStream(data), data.length,
+                SearchMethod.WORK_CNT_BEGIN, SearchMethod.WORK_CNT_MIDDLE, SearchMethod.WORK_CNT_END);
+        String sha1 = Digest.getHexDigest(data, Digest.SHA1);
+        assertEquals(sha1, values.get(SearchMethod.WORK_CNT_BEGIN));
+        assertEquals(sha1, values.get(SearchMethod.WORK_CNT_MIDDLE));
+        assertEquals(sha1, values.get(SearchMethod.WORK_CNT_END));
+    }
+
+    private static String sha1(byte[] data, int offset, int len) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(Digest.SHA1);
+        digest.update(data, offset, len);
+        return Digest.toHex(digest.digest());
+    }
+}
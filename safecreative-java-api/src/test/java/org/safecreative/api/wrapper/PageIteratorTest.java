@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.safecreative.api.ApiException;
+import static org.junit.Assert.*;
+
+/**
+ * PageIterator tests
+ */
+public class PageIteratorTest {
+
+    @Test
+    public void testIterateAllPages() throws Exception {
+        List<Integer> fetched = new ArrayList<Integer>();
+        List<Integer> items = new ArrayList<Integer>();
+        PageIterator<Integer> iterator = new PageIterator<Integer>(TestPages.source(7, 3, fetched));
+        while (iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7), items);
+        assertEquals(Arrays.asList(1, 2, 3), fetched);
+        assertEquals(3, iterator.getPageTotal());
+        assertEquals(7, iterator.getRecordTotal());
+    }
+
+    @Test
+    public void testPrefetchNextPage() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Integer> fetched = new ArrayList<Integer>();
+            final PageIterator.PageSource<Integer> source = TestPages.source(7, 3, fetched);
+            final CountDownLatch secondPage = new CountDownLatch(1);
+            PageIterator<Integer> iterator = new PageIterator<Integer>(page -> {
+                ListPage<Integer> listPage = source.getPage(page);
+                if (page == 2) {
+                    secondPage.countDown();
+                }
+                return listPage;
+            }, executor);
+            assertEquals(Integer.valueOf(1), iterator.next());
+            // Page 2 is fetched in background before the iterator reaches it
+            assertTrue(secondPage.await(5, TimeUnit.SECONDS));
+            synchronized (fetched) {
+                assertEquals(Arrays.asList(1, 2), fetched);
+            }
+            assertEquals(Arrays.asList(2, 3, 4, 5, 6, 7), iterator.stream().collect(Collectors.toList()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testApiException() throws Exception {
+        PageIterator<Integer> iterator = new PageIterator<Integer>(page -> {
+            throw new ApiException("Error", "error page " + page);
+        });
+        try {
+            iterator.hasNext();
+            fail();
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getCause() instanceof ApiException);
+        }
+    }
+}
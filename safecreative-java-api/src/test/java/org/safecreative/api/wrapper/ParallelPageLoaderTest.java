@@ -0,0 +1,111 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.safecreative.api.ApiException;
+import static org.junit.Assert.*;
+
+/**
+ * ParallelPageLoader tests
+ */
+public class ParallelPageLoaderTest {
+
+    @Test
+    public void testLoadAllInOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            ParallelPageLoader<Integer> loader = new ParallelPageLoader<Integer>(page -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10 + (page * 7) % 13);
+                } catch (InterruptedException ex) {
+                    throw new ApiException(ex, null, null);
+                }
+                inFlight.decrementAndGet();
+                return TestPages.page(page, 20, 95);
+            }, executor, 3);
+            ListPage<Integer> all = loader.loadAll();
+            assertEquals(95, all.getSize());
+            assertEquals(95, all.getRecordTotal());
+            assertEquals(5, all.getPageTotal());
+            for (int i = 0; i < 95; i++) {
+                assertEquals(Integer.valueOf(i + 1), all.getList().get(i));
+            }
+            assertTrue(maxInFlight.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingPage() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ParallelPageLoader<Integer> loader = new ParallelPageLoader<Integer>(
+                    page -> page == 4 ? null : TestPages.page(page, 10, 50), executor, 2);
+            try {
+                loader.loadAll();
+                fail();
+            } catch (ApiException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("4"));
+            }
+            // A missing first page is an empty result
+            assertNull(new ParallelPageLoader<Integer>(page -> null, executor, 2).loadAll());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadAllFailure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Integer> loaded = new ArrayList<Integer>();
+            ParallelPageLoader<Integer> loader = new ParallelPageLoader<Integer>(page -> {
+                if (page == 3) {
+                    throw new ApiException("Error", "error page " + page);
+                }
+                return TestPages.page(page, 10, 50);
+            }, executor, 2);
+            try {
+                loader.loadAll((page, listPage) -> loaded.add(page));
+                fail();
+            } catch (ApiException ex) {
+                assertEquals("Error", ex.getErrorCode());
+            }
+            assertEquals(Integer.valueOf(1), loaded.get(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.safecreative.api.util.TestFiles;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * ParallelPieceHasher tests
+ */
+public class ParallelPieceHasherTest {
+
+    /**
+     * Parallel piece hashes must match the single pass fingerprints
+     */
+    @Test
+    public void testMatchesSinglePass() throws Exception {
+        List<SearchMethod> methods = Arrays.asList(SearchMethod.WORK_CNT_ED2K,
+                SearchMethod.WORK_CNT_TORRENT_32K, SearchMethod.WORK_CNT_TORRENT_4096K);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int len : new int[]{0, 1000, ContentFingerprint.ED2K_CHUNK_SIZE + 40000}) {
+                byte[] data = new byte[len];
+                new Random(len).nextBytes(data);
+                File file = TestFiles.createTempFile("pieces", data);
+                try {
+                    assertEquals("length " + len,
+                            ContentFingerprint.compute(new ByteArrayInputStream(data), len,
+                                    methods.toArray(new SearchMethod[methods.size()])),
+                            new ParallelPieceHasher(pool).compute(file, methods));
+                } finally {
+                    file.delete();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sizes that are an exact multiple of the ed2k chunk size hash no trailing empty chunk,
+     * a single chunk being its own value
+     */
+    @Test
+    public void testEd2kChunkMultiples() throws Exception {
+        String[] expected = {"d7def262a127cd79096a108e7a9fc138", "194ee9e4fa79b2ee9f8829284c466051"};
+        List<SearchMethod> methods = Arrays.asList(SearchMethod.WORK_CNT_ED2K);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int chunks = 1; chunks <= expected.length; chunks++) {
+                byte[] data = new byte[chunks * ContentFingerprint.ED2K_CHUNK_SIZE];
+                File file = TestFiles.createTempFile("pieces", data);
+                try {
+                    assertEquals(chunks + " chunks", expected[chunks - 1],
+                            new ParallelPieceHasher(pool).compute(file, methods).get(SearchMethod.WORK_CNT_ED2K));
+                    assertEquals(chunks + " chunks", expected[chunks - 1],
+                            ContentFingerprint.compute(new ByteArrayInputStream(data), data.length,
+                                    SearchMethod.WORK_CNT_ED2K).get(SearchMethod.WORK_CNT_ED2K));
+                } finally {
+                    file.delete();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper;
+
+import java.util.List;
+
+/**
+ * Integer list pages shared by the paging tests
+ */
+final class TestPages {
+
+    private TestPages() {
+    }
+
+    /**
+     * @param page page number, starting at 1
+     * @param pageSize items per page
+     * @param total item total
+     * @return page holding the item numbers of the page, starting at 1
+     */
+    static ListPage<Integer> page(int page, int pageSize, int total) {
+        ListPage<Integer> listPage = new ListPage<Integer>();
+        listPage.setRecordTotal(total);
+        listPage.setPageTotal((total + pageSize - 1) / pageSize);
+        for (int i = (page - 1) * pageSize + 1; i <= Math.min(total, page * pageSize); i++) {
+            listPage.add(i);
+        }
+        return listPage;
+    }
+
+    /**
+     * @param total item total
+     * @param pageSize items per page
+     * @param fetched list where fetched page numbers are added, synchronized on itself
+     * @return page source
+     */
+    static PageIterator.PageSource<Integer> source(final int total, final int pageSize, final List<Integer> fetched) {
+        return page -> {
+            synchronized (fetched) {
+                fetched.add(page);
+            }
+            return page(page, pageSize, total);
+        };
+    }
+}
@@ -0,0 +1,71 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper.converters;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * AbstractModelConverter tests
+ */
+public class AbstractModelConverterTest {
+
+    /**
+     * Parsed dates must match the SimpleDateFormat ones for the api layout, checked in
+     * fixed time zones with and without daylight saving transitions
+     */
+    @Test
+    public void testParseDateMatchesSimpleDateFormat() throws Exception {
+        for (String id : new String[]{"UTC", "Europe/Madrid", "America/New_York", "Australia/Lord_Howe"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            dateFormat.setTimeZone(timeZone);
+            Random random = new Random(1);
+            for (int i = 0; i < 2500; i++) {
+                String value = String.format("%04d-%02d-%02dT%02d:%02d:%02dZ", 1970 + random.nextInt(100),
+                        1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+                assertEquals(id + " " + value, dateFormat.parse(value), AbstractModelConverter.parseDate(value, timeZone));
+            }
+            // Lenient fields, trailing characters and wall times skipped or repeated by a transition
+            for (String value : new String[]{"2010-02-30T25:61:61Z", "2010-13-01T00:00:00Z", "2010-00-10T00:00:00Z",
+                    "2010-04-22T18:07:23Zx", "2010-03-28T02:30:00Z", "2010-10-31T02:30:00Z", "2010-03-14T02:30:00Z",
+                    "2010-11-07T01:30:00Z", "2010-10-03T02:15:00Z", "2010-04-04T01:45:00Z"}) {
+                assertEquals(id + " " + value, dateFormat.parse(value), AbstractModelConverter.parseDate(value, timeZone));
+            }
+        }
+    }
+
+    @Test
+    public void testParseBadDate() {
+        assertNull(AbstractModelConverter.parseDate(""));
+        assertNull(AbstractModelConverter.parseDate(null));
+        assertNull(AbstractModelConverter.parseDate("2010-04-22 18:07:23Z"));
+        assertNull(AbstractModelConverter.parseDate("2010-04-22T18:07:23"));
+        assertNull(AbstractModelConverter.parseDate("2010-04-22T18:0a:23Z"));
+    }
+}
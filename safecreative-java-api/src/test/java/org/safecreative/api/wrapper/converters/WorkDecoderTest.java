@@ -0,0 +1,155 @@
+/*
+Copyright (c) 2010 Safe Creative (http://www.safecreative.org)
+
+Permission is hereby granted, free of charge, to any person
+obtaining a copy of this software and associated documentation
+files (the "Software"), to deal in the Software without
+restriction, including without limitation the rights to use,
+copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the
+Software is furnished to do so, subject to the following
+conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.safecreative.api.wrapper.converters;
+
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Scanner;
+import org.junit.Test;
+import org.safecreative.api.wrapper.ListPage;
+import org.safecreative.api.wrapper.model.License;
+import org.safecreative.api.wrapper.model.Link;
+import org.safecreative.api.wrapper.model.Work;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import static org.junit.Assert.*;
+
+/**
+ * WorkDecoder tests
+ */
+public class WorkDecoderTest {
+
+    @Test
+    public void testDecodeWork() throws Exception {
+        Work work = decode("/work.get.xml");
+        assertEquals("1004226079740", work.getCode());
+        assertEquals("Espacio puente 8", work.getTitle());
+        assertNotNull(work.getEntryDate());
+        assertNull(work.getState());
+        assertTrue(work.getExcerpt().startsWith("<http://www.flickr.com/people/mrmx/>"));
+        assertEquals(1, work.getLinks().size());
+        assertEquals(Link.Type.INFO, work.getLinks().get(0).getType());
+        assertEquals(2, work.getRelations(Work.RelationType.COMPOSITION).size());
+        assertEquals("0902030200236", work.getRelations(Work.RelationType.COMPOSITION).get(1).getCode());
+        assertEquals("Manuel Polo", work.getAuthors().get(0).getName());
+        assertNotNull(work.getAuthors().get(0).getProfileUrl());
+        assertEquals("0804290061501", work.getRightHolders().get(0).getCode());
+
+        License license = work.getLicense();
+        assertEquals("CC by-nc-sa", license.getShortName());
+        assertNull(license.getEndDate());
+        assertNotNull(license.getUrl());
+        assertEquals(License.FeatureValue.INHERITANCE, license.getFeatures().get(License.Feature.DERIVATIONS));
+        assertEquals(5, license.getFeatures().size());
+
+        assertEquals(Boolean.TRUE, work.isAllowDownload());
+        assertEquals(Boolean.FALSE, work.isAllowSale());
+        assertEquals("EN", work.getLanguage().getCode());
+        assertEquals("photo", work.getType().getCode());
+        assertEquals("Photography", work.getType().getName());
+        assertEquals("Artistic", work.getTypeGroup().getCode());
+    }
+
+    @Test
+    public void testDecodePrivateWork() throws Exception {
+        Work work = decode("/work.get.private.xml");
+        assertEquals("1004226079740", work.getCode());
+        assertEquals(Work.WorkState.REGISTERED, work.getState());
+        assertEquals("test observations", work.getObservations());
+        assertNull(work.getAuthors());
+        assertEquals("Photography", work.getType().getName());
+    }
+
+    @Test
+    public void testDecodeLazyListPage() throws Exception {
+        String work = new Scanner(WorkDecoderTest.class.getResourceAsStream("/work.get.xml"), "UTF-8")
+                .useDelimiter("\\A").next().replaceFirst("<\\?xml[^>]*>", "");
+        String page = "<listpage><recordtotal>2</recordtotal><pagetotal>1</pagetotal><works>" + work + work + "</works></listpage>";
+        WorkDecoder decoder = new WorkDecoder();
+        decoder.setLazy(true);
+        XmlTextPullParser parser = new XmlTextPullParser();
+        parser.setInput(page);
+        parser.nextTag();
+        ListPage<Work> listPage = decoder.decodeListPage(parser);
+        assertEquals(2, listPage.getSize());
+        assertEquals(2, listPage.getRecordTotal());
+
+        Work lazy = listPage.getList().get(1);
+        assertFalse(((LazyWork) lazy).isLoaded());
+        assertEquals("1004226079740", lazy.getCode());
+        assertEquals(1, lazy.getLinks().size());
+        assertTrue(lazy.toString().contains("1004226079740"));
+        assertFalse(((LazyWork) lazy).isLoaded());
+        assertEquals("Manuel Polo", lazy.getAuthors().get(0).getName());
+        assertTrue(((LazyWork) lazy).isLoaded());
+        assertEquals("CC by-nc-sa", lazy.getLicense().getShortName());
+        assertEquals(2, lazy.getRelations(Work.RelationType.COMPOSITION).size());
+        assertEquals(decode("/work.get.xml"), lazy);
+    }
+
+    @Test
+    public void testLazyDecodeErrorThrown() {
+        LazyWork work = new LazyWork(new WorkDecoder());
+        work.setElement("<work><authors><user><name>a</name></authors></work>");
+        for (int i = 0; i < 2; i++) {
+            try {
+                work.getAuthors();
+                fail("decode error not thrown");
+            } catch (RuntimeException ex) {
+                assertFalse(work.isLoaded());
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeProjection() throws Exception {
+        WorkDecoder decoder = new WorkDecoder(Work.Field.projection(
+                Arrays.asList(Work.Field.CODE, Work.Field.ENTRY_DATE, Work.Field.LICENSE)));
+        Work full = decode("/work.get.xml");
+        Work work = decode("/work.get.xml", decoder);
+        assertEquals(full.getCode(), work.getCode());
+        assertNull(work.getTitle());
+        assertEquals(full.getEntryDate(), work.getEntryDate());
+        assertEquals("CC by-nc-sa", work.getLicense().getShortName());
+        assertNull(work.getAuthors());
+        assertTrue(work.getLinks().isEmpty());
+        assertNull(work.getExcerpt());
+        assertNull(work.getType());
+    }
+
+    private static Work decode(String resource) throws Exception {
+        return decode(resource, new WorkDecoder());
+    }
+
+    private static Work decode(String resource, WorkDecoder decoder) throws Exception {
+        XmlPullParser parser = new MXParser();
+        parser.setInput(new InputStreamReader(WorkDecoderTest.class.getResourceAsStream(resource), "UTF-8"));
+        parser.nextTag();
+        Work work = decoder.decodeWork(parser);
+        assertEquals(XmlPullParser.END_TAG, parser.getEventType());
+        assertEquals("work", parser.getName());
+        return work;
+    }
+}